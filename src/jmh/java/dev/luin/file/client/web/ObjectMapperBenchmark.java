@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020 E.Luinstra
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.luin.file.client.web;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.HttpMethod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.objenesis.ObjenesisStd;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+import dev.luin.file.client.core.service.download.DownloadServiceImpl;
+import dev.luin.file.client.core.service.file.FileServiceImpl;
+import dev.luin.file.client.core.service.upload.UploadServiceImpl;
+import lombok.val;
+
+/**
+ * Serializes a listing of the types returned by the upload, download and files REST resources (UploadTask, DownloadTask and FileInfo)
+ * with the ObjectMapper built by {@link WebConfig#objectMapper()}, as is and with the Afterburner or Blackbird module added.
+ * The element type is taken from the resource methods, like {@link WebConfig} does when it warms up the serializers,
+ * and instances are created without a constructor and filled with sample values for every field.
+ * Run with {@code mvn -Pjmh test-compile exec:java}; the blackbird variant requires Java 11 or newer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(2)
+public class ObjectMapperBenchmark
+{
+	private static final Instant NOW = Instant.parse("2022-01-01T12:00:00.123Z");
+	private static final ObjenesisStd objenesis = new ObjenesisStd();
+
+	@Param({"upload","download","files"})
+	String resource;
+	@Param({"none","afterburner","blackbird"})
+	String module;
+	@Param({"100"})
+	int size;
+	ObjectWriter writer;
+	List<Object> listing;
+
+	@Setup
+	public void setUp() throws ReflectiveOperationException
+	{
+		val mapper = new WebConfig().objectMapper();
+		if ("afterburner".equals(module))
+			mapper.registerModule(new AfterburnerModule());
+		else if ("blackbird".equals(module))
+			mapper.registerModule(new BlackbirdModule());
+		val type = getResourceType(getResourceClass());
+		writer = mapper.writerFor(mapper.getTypeFactory().constructCollectionType(List.class,type));
+		listing = new ArrayList<>();
+		for (int i = 0; i < size; i++)
+			listing.add(createInstance(type,i));
+	}
+
+	private Class<?> getResourceClass()
+	{
+		switch (resource)
+		{
+			case "upload":
+				return UploadServiceImpl.class;
+			case "download":
+				return DownloadServiceImpl.class;
+			default:
+				return FileServiceImpl.class;
+		}
+	}
+
+	private Class<?> getResourceType(Class<?> resourceClass)
+	{
+		return Arrays.stream(resourceClass.getMethods())
+				.filter(m -> Arrays.stream(m.getAnnotations()).anyMatch(a -> a.annotationType().isAnnotationPresent(HttpMethod.class)))
+				.map(m -> getElementType(m.getGenericReturnType()))
+				.filter(t -> t instanceof Class)
+				.map(t -> (Class<?>)t)
+				.filter(c -> !c.isPrimitive() && !c.getName().startsWith("java"))
+				.findFirst()
+				.orElseThrow(() -> new IllegalStateException("No resource type found in " + resourceClass.getName()));
+	}
+
+	private Type getElementType(Type type)
+	{
+		if (type instanceof ParameterizedType && Collection.class.isAssignableFrom((Class<?>)((ParameterizedType)type).getRawType()))
+			return ((ParameterizedType)type).getActualTypeArguments()[0];
+		return type;
+	}
+
+	private Object createInstance(Class<?> type, int i) throws IllegalAccessException
+	{
+		val result = objenesis.newInstance(type);
+		for (Class<?> c = type; c != Object.class; c = c.getSuperclass())
+			for (val field : c.getDeclaredFields())
+			{
+				val value = createValue(field,i);
+				if (value != null && !Modifier.isStatic(field.getModifiers()))
+				{
+					field.setAccessible(true);
+					field.set(result,value);
+				}
+			}
+		return result;
+	}
+
+	private Object createValue(Field field, int i)
+	{
+		val type = field.getType();
+		if (type == String.class)
+			return field.getName().toLowerCase().contains("url")
+					? "https://localhost:8443/service/rest/v1/files/" + i
+					: field.getName() + "-" + i;
+		if (type == long.class || type == Long.class)
+			return 1000L + i;
+		if (type == int.class || type == Integer.class)
+			return i % 5;
+		if (type == boolean.class || type == Boolean.class)
+			return i % 2 == 0;
+		if (type.isEnum())
+			return type.getEnumConstants()[i % type.getEnumConstants().length];
+		if (type == Instant.class)
+			return NOW.plusSeconds(i);
+		if (type == ZonedDateTime.class)
+			return NOW.plusSeconds(i).atZone(ZoneOffset.UTC);
+		if (type == OffsetDateTime.class)
+			return NOW.plusSeconds(i).atOffset(ZoneOffset.UTC);
+		if (type == LocalDateTime.class)
+			return NOW.plusSeconds(i).atOffset(ZoneOffset.UTC).toLocalDateTime();
+		if (type == Date.class)
+			return Date.from(NOW.plusSeconds(i));
+		return null;
+	}
+
+	@Benchmark
+	public byte[] serializeListing() throws JsonProcessingException
+	{
+		return writer.writeValueAsBytes(listing);
+	}
+}
@@ -50,6 +50,8 @@ import org.hsqldb.server.ServerAcl.AclFormatException;
 import org.springframework.web.context.ContextLoaderListener;
 import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
 
+import dev.luin.file.client.web.AdmissionControl;
+import dev.luin.file.client.web.ClientRateLimits;
 import dev.luin.file.client.web.HealthServer;
 import dev.luin.file.client.web.HsqlDb;
 import dev.luin.file.client.web.Jmx;
@@ -111,7 +113,9 @@ public class Start implements SystemInterface
 		val result = new Options();
 		Start.addOptions(result);
 		WebServer.addOptions(result);
+		AdmissionControl.addOptions(result);
 		WebAuthentication.addOptions(result);
+		ClientRateLimits.addOptions(result);
 		HsqlDb.addOptions(result);
 		Jmx.addOptions(result);
 		HealthServer.addOptions(result);
@@ -149,7 +153,7 @@ public class Start implements SystemInterface
 	public static Start of(CommandLine cmd) throws ParseException, IOException
 	{
 		val properties = getProperties();
-		val server = new Server();
+		val server = new Server(new WebServer(cmd).createThreadPool());
 		return new Start(cmd,properties,server);
 	}
 
@@ -22,6 +22,7 @@ import org.apache.commons.cli.CommandLine;
 import org.eclipse.jetty.server.Server;
 import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
 
+import dev.luin.file.client.web.WebServer;
 import lombok.AccessLevel;
 import lombok.val;
 import lombok.experimental.FieldDefaults;
@@ -49,7 +50,7 @@ public class StartGB extends Start
 	public static Start of(CommandLine cmd) throws IOException
 	{
 		val properties = getProperties();
-		val server = new Server();
+		val server = new Server(new WebServer(cmd).createThreadPool());
 		return new StartGB(cmd,properties,server);
 	}
 
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 E.Luinstra
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.luin.file.client.web;
+
+import java.util.EnumSet;
+
+import javax.servlet.DispatcherType;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+
+import dev.luin.file.client.Config;
+import dev.luin.file.client.SystemInterface;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.val;
+import lombok.experimental.FieldDefaults;
+
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@AllArgsConstructor
+public class AdmissionControl implements Config, SystemInterface
+{
+	@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+	@Getter
+	private enum Option
+	{
+		UPLOAD_LIMIT("uploadLimit","upload","/rest/v1/upload/*"),
+		DOWNLOAD_LIMIT("downloadLimit","download","/rest/v1/download/*"),
+		FILES_LIMIT("filesLimit","files","/rest/v1/files/*"),
+		GB_LIMIT("gbLimit","gb","/rest/v1/gb/*"),
+		SOAP_LIMIT("soapLimit","soap","/upload/*","/download/*","/file/*","/gb/*"),
+		LIMIT_QUEUE_SIZE("limitQueueSize"),
+		LIMIT_QUEUE_TIMEOUT("limitQueueTimeout"),
+		RETRY_AFTER("retryAfter");
+
+		String name;
+		String endpoint;
+		String[] paths;
+
+		Option(String name)
+		{
+			this(name,null);
+		}
+
+		Option(String name, String endpoint, String...paths)
+		{
+			this.name = name;
+			this.endpoint = endpoint;
+			this.paths = paths;
+		}
+	}
+
+	@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+	@AllArgsConstructor
+	@Getter
+	private enum DefaultValue
+	{
+		LIMIT_QUEUE_SIZE("50"),
+		LIMIT_QUEUE_TIMEOUT("1000"),
+		RETRY_AFTER("1");
+
+		String value;
+	}
+
+	private static final Option[] LIMITS = {Option.UPLOAD_LIMIT,Option.DOWNLOAD_LIMIT,Option.FILES_LIMIT,Option.GB_LIMIT,Option.SOAP_LIMIT};
+	CommandLine cmd;
+	WebServer webServer;
+
+	public static Options addOptions(Options options)
+	{
+		options.addOption(Option.UPLOAD_LIMIT.name,true,"set max concurrent requests on /rest/v1/upload [default: " + NONE + "]");
+		options.addOption(Option.DOWNLOAD_LIMIT.name,true,"set max concurrent requests on /rest/v1/download [default: " + NONE + "]");
+		options.addOption(Option.FILES_LIMIT.name,true,"set max concurrent requests on /rest/v1/files [default: " + NONE + "]");
+		options.addOption(Option.GB_LIMIT.name,true,"set max concurrent requests on /rest/v1/gb [default: " + NONE + "]");
+		options.addOption(Option.SOAP_LIMIT.name,true,"set max concurrent requests on the SOAP services [default: " + NONE + "]");
+		options.addOption(Option.LIMIT_QUEUE_SIZE.name,true,"set max requests waiting for a limit before they are rejected [default: " + DefaultValue.LIMIT_QUEUE_SIZE.value + "]");
+		options.addOption(Option.LIMIT_QUEUE_TIMEOUT.name,true,"set max time in ms a request waits for a limit [default: " + DefaultValue.LIMIT_QUEUE_TIMEOUT.value + "]");
+		options.addOption(Option.RETRY_AFTER.name,true,"set Retry-After in seconds returned on rejected requests [default: " + DefaultValue.RETRY_AFTER.value + "]");
+		return options;
+	}
+
+	public void init(ServletContextHandler handler)
+	{
+		for (val limit : LIMITS)
+			if (cmd.hasOption(limit.name))
+				addFilter(handler,limit);
+	}
+
+	private void addFilter(ServletContextHandler handler, Option limit)
+	{
+		val filter = new ConcurrencyLimitFilter(
+				limit.endpoint,
+				Integer.parseInt(cmd.getOptionValue(limit.name)),
+				Integer.parseInt(cmd.getOptionValue(Option.LIMIT_QUEUE_SIZE.name,DefaultValue.LIMIT_QUEUE_SIZE.value)),
+				Long.parseLong(cmd.getOptionValue(Option.LIMIT_QUEUE_TIMEOUT.name,DefaultValue.LIMIT_QUEUE_TIMEOUT.value)),
+				Integer.parseInt(cmd.getOptionValue(Option.RETRY_AFTER.name,DefaultValue.RETRY_AFTER.value)));
+		handler.addBean(filter);
+		val holder = new FilterHolder(filter);
+		holder.setName(limit.endpoint + "ConcurrencyLimit");
+		holder.setAsyncSupported(true);
+		for (val path : limit.paths)
+			handler.addFilter(holder,webServer.getSoapPath() + path,EnumSet.of(DispatcherType.REQUEST,DispatcherType.ASYNC));
+		println("Limiting " + limit.endpoint + " to " + filter.getMaxConcurrent() + " concurrent requests");
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2020 E.Luinstra
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.luin.file.client.web;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.cert.CertificateEncodingException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+
+import lombok.AccessLevel;
+import lombok.val;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Caches successful client certificate validations of the wrapped authentication filter by certificate fingerprint.
+ * A cached certificate skips the wrapped filter until its entry expires or the client truststore file changes.
+ * When the certificate is passed in a header, the fingerprint is taken from the raw header value, so no PEM parsing is needed on a hit.
+ */
+@ManagedObject("client certificate validation cache")
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class CachingClientCertificateAuthenticationFilter implements Filter
+{
+	private static final long TRUST_STORE_CHECK_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+	Filter delegate;
+	String clientCertificateHeader;
+	File trustStoreFile;
+	int maxSize;
+	long ttl;
+	Map<String,Long> validated = new ConcurrentHashMap<>();
+	AtomicLong trustStoreLastModified = new AtomicLong();
+	AtomicLong nextTrustStoreCheck = new AtomicLong(System.nanoTime());
+	LongAdder hits = new LongAdder();
+	LongAdder misses = new LongAdder();
+	LongAdder evictions = new LongAdder();
+
+	public CachingClientCertificateAuthenticationFilter(Filter delegate, String clientCertificateHeader, File trustStoreFile, int maxSize, long ttlSeconds)
+	{
+		this.delegate = delegate;
+		this.clientCertificateHeader = clientCertificateHeader;
+		this.trustStoreFile = trustStoreFile;
+		this.maxSize = maxSize;
+		this.ttl = TimeUnit.SECONDS.toNanos(ttlSeconds);
+		if (trustStoreFile != null)
+			trustStoreLastModified.set(trustStoreFile.lastModified());
+	}
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException
+	{
+		delegate.init(filterConfig);
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException
+	{
+		checkTrustStore();
+		val fingerprint = getFingerprint((HttpServletRequest)request);
+		if (!fingerprint.isPresent())
+		{
+			delegate.doFilter(request,response,chain);
+			return;
+		}
+		val expires = validated.get(fingerprint.get());
+		if (expires != null && expires - System.nanoTime() > 0)
+		{
+			hits.increment();
+			chain.doFilter(request,response);
+		}
+		else
+		{
+			misses.increment();
+			delegate.doFilter(request,response,(req,res) ->
+			{
+				put(fingerprint.get());
+				chain.doFilter(req,res);
+			});
+		}
+	}
+
+	private Optional<String> getFingerprint(HttpServletRequest request)
+	{
+		val header = ClientCertificates.getHeader(request,clientCertificateHeader);
+		if (header.isPresent())
+			return Optional.of(DigestUtils.sha256Hex(header.get()));
+		val certificate = ClientCertificates.getTlsCertificate(request);
+		try
+		{
+			return certificate.isPresent() ? Optional.of(DigestUtils.sha256Hex(certificate.get().getEncoded())) : Optional.empty();
+		}
+		catch (CertificateEncodingException e)
+		{
+			return Optional.empty();
+		}
+	}
+
+	private void put(String fingerprint)
+	{
+		val now = System.nanoTime();
+		if (validated.size() >= maxSize)
+		{
+			validated.values().removeIf(expires -> expires - now <= 0);
+			if (validated.size() >= maxSize)
+				clear();
+		}
+		validated.put(fingerprint,now + ttl);
+	}
+
+	private void checkTrustStore()
+	{
+		if (trustStoreFile == null)
+			return;
+		val now = System.nanoTime();
+		val next = nextTrustStoreCheck.get();
+		if (now - next >= 0 && nextTrustStoreCheck.compareAndSet(next,now + TRUST_STORE_CHECK_INTERVAL))
+		{
+			val lastModified = trustStoreFile.lastModified();
+			if (trustStoreLastModified.getAndSet(lastModified) != lastModified)
+				clear();
+		}
+	}
+
+	@Override
+	public void destroy()
+	{
+		delegate.destroy();
+	}
+
+	@ManagedOperation(value = "clear the cache", impact = "ACTION")
+	public void clear()
+	{
+		evictions.add(validated.size());
+		validated.clear();
+	}
+
+	@ManagedAttribute("number of cached certificates")
+	public int getSize()
+	{
+		return validated.size();
+	}
+
+	@ManagedAttribute("number of cache hits")
+	public long getHits()
+	{
+		return hits.sum();
+	}
+
+	@ManagedAttribute("number of cache misses")
+	public long getMisses()
+	{
+		return misses.sum();
+	}
+
+	@ManagedAttribute("number of evicted certificates")
+	public long getEvictions()
+	{
+		return evictions.sum();
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 E.Luinstra
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.luin.file.client.web;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Optional;
+
+import javax.security.auth.x500.X500Principal;
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.val;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class ClientCertificates
+{
+	private static final String X509_CERTIFICATE_ATTRIBUTE = "javax.servlet.request.X509Certificate";
+
+	public static Optional<X509Certificate> getTlsCertificate(HttpServletRequest request)
+	{
+		val certificates = (X509Certificate[])request.getAttribute(X509_CERTIFICATE_ATTRIBUTE);
+		return certificates != null && certificates.length > 0 ? Optional.of(certificates[0]) : Optional.empty();
+	}
+
+	public static Optional<String> getHeader(HttpServletRequest request, String header)
+	{
+		return StringUtils.isEmpty(header) ? Optional.empty() : Optional.ofNullable(StringUtils.trimToNull(request.getHeader(header)));
+	}
+
+	public static X509Certificate decode(String header) throws CertificateException
+	{
+		try
+		{
+			val pem = header.contains("%") ? URLDecoder.decode(header,StandardCharsets.US_ASCII.name()) : header;
+			val base64 = pem.replaceAll("-----(BEGIN|END) CERTIFICATE-----","").replaceAll("\\s","");
+			val certificateFactory = CertificateFactory.getInstance("X509");
+			return (X509Certificate)certificateFactory.generateCertificate(new ByteArrayInputStream(Base64.getDecoder().decode(base64)));
+		}
+		catch (UnsupportedEncodingException | IllegalArgumentException e)
+		{
+			throw new CertificateException(e);
+		}
+	}
+
+	public static String getSubject(X509Certificate certificate)
+	{
+		return certificate.getSubjectX500Principal().getName(X500Principal.CANONICAL);
+	}
+
+	public static String normalize(String dn)
+	{
+		return new X500Principal(dn).getName(X500Principal.CANONICAL);
+	}
+}
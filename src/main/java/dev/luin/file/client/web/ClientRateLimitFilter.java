@@ -0,0 +1,372 @@
+/*
+ * Copyright 2020 E.Luinstra
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.luin.file.client.web;
+
+import java.io.IOException;
+import java.security.cert.CertificateException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.val;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Limits requests per client certificate subject: a request rate (token bucket), the number of
+ * concurrent intake requests (POSTs that submit a file: REST uploads and the SOAP uploadFile operation)
+ * and the number of intake request bytes in flight. Tasks processed later by the upload and download workers are not limited.
+ * Requests with a Content-Length are charged up front; chunked requests without one are charged as their body is read
+ * and aborted when a read would exceed the bytes in flight limit.
+ * All per client state is kept in atomics in a {@link ConcurrentHashMap}, so admission never takes a lock.
+ */
+@ManagedObject("client certificate rate limit")
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ClientRateLimitFilter implements Filter
+{
+	private static final int MAX_HEADER_CACHE_SIZE = 1024;
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+	private static final int MAX_PEEK_SIZE = 8192;
+
+	@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+	@AllArgsConstructor
+	@Getter
+	public static class Limit
+	{
+		public static final Limit UNLIMITED = new Limit(0,1,0,0);
+		double requestsPerSecond;
+		int burst;
+		int maxTransfers;
+		long maxBytesInFlight;
+	}
+
+	@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+	static class ClientState
+	{
+		Limit limit;
+		LongSupplier nanoTime;
+		long interval;
+		long tolerance;
+		AtomicLong theoreticalArrivalTime;
+		AtomicInteger transfers = new AtomicInteger();
+		AtomicLong bytesInFlight = new AtomicLong();
+
+		ClientState(Limit limit)
+		{
+			this(limit,System::nanoTime);
+		}
+
+		ClientState(Limit limit, LongSupplier nanoTime)
+		{
+			this.limit = limit;
+			this.nanoTime = nanoTime;
+			this.interval = limit.requestsPerSecond > 0 ? (long)(NANOS_PER_SECOND / limit.requestsPerSecond) : 0;
+			this.tolerance = interval * Math.max(0,limit.burst - 1);
+			this.theoreticalArrivalTime = new AtomicLong(nanoTime.getAsLong());
+		}
+
+		/**
+		 * @return 0 when the request is admitted, otherwise the number of nanoseconds until it would be
+		 */
+		long tryRequest()
+		{
+			if (interval == 0)
+				return 0;
+			while (true)
+			{
+				val now = nanoTime.getAsLong();
+				val tat = theoreticalArrivalTime.get();
+				val wait = tat - tolerance - now;
+				if (wait > 0)
+					return wait;
+				if (theoreticalArrivalTime.compareAndSet(tat,Math.max(tat,now) + interval))
+					return 0;
+			}
+		}
+
+		boolean limitsTransfers()
+		{
+			return limit.maxTransfers > 0 || limit.maxBytesInFlight > 0;
+		}
+
+		boolean tryStartTransfer(long bytes)
+		{
+			if (!tryAdd(transfers,limit.maxTransfers))
+				return false;
+			if (!tryAdd(bytesInFlight,bytes,limit.maxBytesInFlight,0))
+			{
+				transfers.decrementAndGet();
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Charges bytes to a transfer that already holds {@code own} bytes. A transfer is never rejected while it is the only one holding bytes.
+		 */
+		boolean tryAddBytes(long bytes, long own)
+		{
+			return tryAdd(bytesInFlight,bytes,limit.maxBytesInFlight,own);
+		}
+
+		void endTransfer(long bytes)
+		{
+			bytesInFlight.addAndGet(-bytes);
+			transfers.decrementAndGet();
+		}
+
+		private static boolean tryAdd(AtomicInteger counter, int max)
+		{
+			while (true)
+			{
+				val current = counter.get();
+				if (max > 0 && current >= max)
+					return false;
+				if (counter.compareAndSet(current,current + 1))
+					return true;
+			}
+		}
+
+		private static boolean tryAdd(AtomicLong counter, long amount, long max, long own)
+		{
+			while (true)
+			{
+				val current = counter.get();
+				if (max > 0 && current > own && current + amount > max)
+					return false;
+				if (counter.compareAndSet(current,current + amount))
+					return true;
+			}
+		}
+	}
+
+	@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+	@AllArgsConstructor
+	private static class EndTransferListener implements AsyncListener
+	{
+		ClientState client;
+		LongSupplier bytes;
+
+		@Override
+		public void onComplete(AsyncEvent event) throws IOException
+		{
+			client.endTransfer(bytes.getAsLong());
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) throws IOException
+		{
+		}
+
+		@Override
+		public void onError(AsyncEvent event) throws IOException
+		{
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) throws IOException
+		{
+			event.getAsyncContext().addListener(this);
+		}
+	}
+
+	String clientCertificateHeader;
+	List<String> intakePaths;
+	Map<String,Pattern> soapIntakeOperations;
+	Limit defaultLimit;
+	Map<String,Limit> limits;
+	Map<String,ClientState> clients = new ConcurrentHashMap<>();
+	Map<String,String> subjects = new ConcurrentHashMap<>();
+	LongAdder rateRejected = new LongAdder();
+	LongAdder transferRejected = new LongAdder();
+
+	/**
+	 * @param intakePaths paths on which every POST is an intake request
+	 * @param soapIntakeOperations SOAP endpoint paths and the local name of their intake operation
+	 */
+	public ClientRateLimitFilter(String clientCertificateHeader, List<String> intakePaths, Map<String,String> soapIntakeOperations, Limit defaultLimit, Map<String,Limit> limits)
+	{
+		this.clientCertificateHeader = clientCertificateHeader;
+		this.intakePaths = intakePaths;
+		this.soapIntakeOperations = soapIntakeOperations.entrySet().stream()
+				.collect(Collectors.toMap(Map.Entry::getKey,e -> Pattern.compile("<([\\w.-]+:)?Body[^>]*>\\s*<([\\w.-]+:)?" + Pattern.quote(e.getValue()) + "[\\s/>]")));
+		this.defaultLimit = defaultLimit;
+		this.limits = limits;
+	}
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException
+	{
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException
+	{
+		HttpServletRequest httpRequest = (HttpServletRequest)request;
+		val subject = getSubject(httpRequest);
+		if (!subject.isPresent())
+		{
+			chain.doFilter(request,response);
+			return;
+		}
+		val client = clients.computeIfAbsent(subject.get(),s -> new ClientState(limits.getOrDefault(s,defaultLimit)));
+		val wait = client.tryRequest();
+		if (wait > 0)
+		{
+			rateRejected.increment();
+			reject((HttpServletResponse)response,wait);
+		}
+		else if (HttpMethod.POST.is(httpRequest.getMethod()) && client.limitsTransfers())
+		{
+			val path = getPath(httpRequest);
+			if (soapIntakeOperations.containsKey(path))
+			{
+				val peekingRequest = new PeekingRequest(httpRequest,MAX_PEEK_SIZE);
+				httpRequest = peekingRequest;
+				filter(client,soapIntakeOperations.get(path).matcher(peekingRequest.getPrefix()).find(),httpRequest,response,chain);
+			}
+			else
+				filter(client,intakePaths.contains(path),httpRequest,response,chain);
+		}
+		else
+			chain.doFilter(request,response);
+	}
+
+	private void filter(ClientState client, boolean intake, HttpServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException
+	{
+		if (!intake)
+			chain.doFilter(request,response);
+		else
+		{
+			val contentLength = request.getContentLengthLong();
+			if (client.tryStartTransfer(Math.max(0,contentLength)))
+			{
+				val meteredRequest = contentLength < 0 ? new MeteredRequest(request,client,transferRejected::increment) : null;
+				LongSupplier bytes = meteredRequest != null ? meteredRequest::getBytesRead : () -> contentLength;
+				try
+				{
+					chain.doFilter(meteredRequest != null ? meteredRequest : request,response);
+				}
+				finally
+				{
+					if (request.isAsyncStarted())
+						request.getAsyncContext().addListener(new EndTransferListener(client,bytes));
+					else
+						client.endTransfer(bytes.getAsLong());
+				}
+			}
+			else
+			{
+				transferRejected.increment();
+				reject((HttpServletResponse)response,NANOS_PER_SECOND);
+			}
+		}
+	}
+
+	private Optional<String> getSubject(HttpServletRequest request)
+	{
+		val header = ClientCertificates.getHeader(request,clientCertificateHeader);
+		if (header.isPresent())
+		{
+			if (subjects.size() >= MAX_HEADER_CACHE_SIZE)
+				subjects.clear();
+			return Optional.ofNullable(subjects.computeIfAbsent(header.get(),this::decodeSubject));
+		}
+		else
+			return ClientCertificates.getTlsCertificate(request).map(ClientCertificates::getSubject);
+	}
+
+	private String decodeSubject(String header)
+	{
+		try
+		{
+			return ClientCertificates.getSubject(ClientCertificates.decode(header));
+		}
+		catch (CertificateException e)
+		{
+			return null;
+		}
+	}
+
+	private String getPath(HttpServletRequest request)
+	{
+		val path = request.getRequestURI().substring(request.getContextPath().length());
+		return path.endsWith("/") ? path.substring(0,path.length() - 1) : path;
+	}
+
+	private void reject(HttpServletResponse response, long waitNanos)
+	{
+		response.setHeader(HttpHeader.RETRY_AFTER.asString(),String.valueOf(Math.max(1,(waitNanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND)));
+		response.setStatus(429);
+	}
+
+	@Override
+	public void destroy()
+	{
+	}
+
+	@ManagedAttribute("number of clients seen")
+	public int getClients()
+	{
+		return clients.size();
+	}
+
+	@ManagedAttribute("number of requests rejected by the request rate limit")
+	public long getRateRejected()
+	{
+		return rateRejected.sum();
+	}
+
+	@ManagedAttribute("number of requests rejected by the transfer or bytes in flight limit")
+	public long getTransferRejected()
+	{
+		return transferRejected.sum();
+	}
+
+	@ManagedAttribute("active transfers/bytes in flight per client")
+	public String getActiveTransfers()
+	{
+		return clients.entrySet().stream()
+				.map(e -> e.getKey() + "=" + e.getValue().transfers.get() + "/" + e.getValue().bytesInFlight.get())
+				.collect(Collectors.joining(", "));
+	}
+}
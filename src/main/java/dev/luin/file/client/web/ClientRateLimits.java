@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 E.Luinstra
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.luin.file.client.web;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.commons.lang3.StringUtils;
+
+import dev.luin.file.client.Config;
+import dev.luin.file.client.SystemInterface;
+import dev.luin.file.client.web.ClientRateLimitFilter.Limit;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.val;
+import lombok.experimental.FieldDefaults;
+
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@AllArgsConstructor
+public class ClientRateLimits implements Config, SystemInterface
+{
+	@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+	@AllArgsConstructor
+	@Getter
+	private enum Option
+	{
+		CLIENT_REQUEST_RATE("clientRequestRate"),
+		CLIENT_REQUEST_BURST("clientRequestBurst"),
+		CLIENT_MAX_TRANSFERS("clientMaxTransfers"),
+		CLIENT_MAX_BYTES_IN_FLIGHT("clientMaxBytesInFlight"),
+		CLIENT_LIMITS_FILE("clientLimitsFile");
+
+		String name;
+	}
+
+	@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+	@AllArgsConstructor
+	@Getter
+	private enum DefaultValue
+	{
+		CLIENT_REQUEST_RATE("0"),
+		CLIENT_REQUEST_BURST("10"),
+		CLIENT_MAX_TRANSFERS("0"),
+		CLIENT_MAX_BYTES_IN_FLIGHT("0");
+
+		String value;
+	}
+
+	CommandLine cmd;
+	WebServer webServer;
+
+	public static Options addOptions(Options options)
+	{
+		options.addOption(Option.CLIENT_REQUEST_RATE.name,true,"set max requests per second per client certificate, 0 is unlimited [default: " + DefaultValue.CLIENT_REQUEST_RATE.value + "]");
+		options.addOption(Option.CLIENT_REQUEST_BURST.name,true,"set request burst size per client certificate [default: " + DefaultValue.CLIENT_REQUEST_BURST.value + "]");
+		options.addOption(Option.CLIENT_MAX_TRANSFERS.name,true,"set max concurrent intake requests (REST upload POSTs and SOAP uploadFile calls, not the tasks they create) per client certificate, 0 is unlimited [default: " + DefaultValue.CLIENT_MAX_TRANSFERS.value + "]");
+		options.addOption(Option.CLIENT_MAX_BYTES_IN_FLIGHT.name,true,"set max intake request bytes in flight per client certificate, 0 is unlimited; requests without Content-Length are charged as they are read and aborted when they exceed it [default: " + DefaultValue.CLIENT_MAX_BYTES_IN_FLIGHT.value + "]");
+		options.addOption(Option.CLIENT_LIMITS_FILE.name,true,"set file with limits per client certificate, one <rate>;<burst>;<transfers>;<bytes>;<subject DN> per line [default: " + NONE + "]");
+		return options;
+	}
+
+	public boolean isEnabled()
+	{
+		return Arrays.stream(Option.values()).anyMatch(o -> cmd.hasOption(o.name));
+	}
+
+	public ClientRateLimitFilter createFilter(String clientCertificateHeader) throws IOException
+	{
+		println("Configuring Web Server client certificate rate limits");
+		val defaultLimit = new Limit(
+				Double.parseDouble(cmd.getOptionValue(Option.CLIENT_REQUEST_RATE.name,DefaultValue.CLIENT_REQUEST_RATE.value)),
+				Integer.parseInt(cmd.getOptionValue(Option.CLIENT_REQUEST_BURST.name,DefaultValue.CLIENT_REQUEST_BURST.value)),
+				Integer.parseInt(cmd.getOptionValue(Option.CLIENT_MAX_TRANSFERS.name,DefaultValue.CLIENT_MAX_TRANSFERS.value)),
+				Long.parseLong(cmd.getOptionValue(Option.CLIENT_MAX_BYTES_IN_FLIGHT.name,DefaultValue.CLIENT_MAX_BYTES_IN_FLIGHT.value)));
+		val soapPath = webServer.getSoapPath();
+		val intakePaths = Collections.singletonList(soapPath + "/rest/v1/upload");
+		val soapIntakeOperations = Collections.singletonMap(soapPath + "/upload","uploadFile");
+		return new ClientRateLimitFilter(clientCertificateHeader,intakePaths,soapIntakeOperations,defaultLimit,readLimits(defaultLimit));
+	}
+
+	private Map<String,Limit> readLimits(Limit defaultLimit) throws IOException
+	{
+		val result = new HashMap<String,Limit>();
+		if (cmd.hasOption(Option.CLIENT_LIMITS_FILE.name))
+		{
+			val file = Paths.get(cmd.getOptionValue(Option.CLIENT_LIMITS_FILE.name));
+			println("Using clientLimitsFile " + file.toAbsolutePath());
+			for (val line : Files.readAllLines(file,StandardCharsets.UTF_8))
+				if (!StringUtils.isBlank(line) && !line.trim().startsWith("#"))
+				{
+					val fields = line.trim().split(";",5);
+					if (fields.length < 5)
+						throw new IOException("Invalid line in " + file + ": " + line);
+					result.put(ClientCertificates.normalize(fields[4].trim()),new Limit(
+							StringUtils.isBlank(fields[0]) ? defaultLimit.getRequestsPerSecond() : Double.parseDouble(fields[0].trim()),
+							StringUtils.isBlank(fields[1]) ? defaultLimit.getBurst() : Integer.parseInt(fields[1].trim()),
+							StringUtils.isBlank(fields[2]) ? defaultLimit.getMaxTransfers() : Integer.parseInt(fields[2].trim()),
+							StringUtils.isBlank(fields[3]) ? defaultLimit.getMaxBytesInFlight() : Long.parseLong(fields[3].trim())));
+				}
+		}
+		return result;
+	}
+}
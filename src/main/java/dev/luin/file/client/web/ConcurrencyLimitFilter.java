@@ -0,0 +1,242 @@
+/*
+ * Copyright 2020 E.Luinstra
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.luin.file.client.web;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+
+import lombok.AccessLevel;
+import lombok.val;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Limits the number of requests that are processed concurrently for a group of paths.
+ * Requests that cannot be admitted are suspended (without holding a thread) in a bounded queue for at most queueTimeout milliseconds
+ * and are dispatched again as soon as a running request hands over its permit.
+ * When the queue is full or the timeout expires they are rejected with 503 and a Retry-After header.
+ * The filter must be mapped to the REQUEST and ASYNC dispatcher types.
+ */
+@ManagedObject("concurrency limit")
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ConcurrencyLimitFilter implements Filter
+{
+	private enum State
+	{
+		QUEUED, ADMITTED, TIMED_OUT
+	}
+
+	String name;
+	int maxConcurrent;
+	int maxQueued;
+	long queueTimeout;
+	int retryAfter;
+	String stateAttribute;
+	Semaphore permits;
+	Queue<AsyncContext> queue = new ConcurrentLinkedQueue<>();
+	AtomicInteger queued = new AtomicInteger();
+	LongAdder accepted = new LongAdder();
+	LongAdder rejected = new LongAdder();
+
+	public ConcurrencyLimitFilter(String name, int maxConcurrent, int maxQueued, long queueTimeout, int retryAfter)
+	{
+		this.name = name;
+		this.maxConcurrent = maxConcurrent;
+		this.maxQueued = maxQueued;
+		this.queueTimeout = queueTimeout;
+		this.retryAfter = retryAfter;
+		this.stateAttribute = ConcurrencyLimitFilter.class.getName() + "." + name;
+		this.permits = new Semaphore(maxConcurrent);
+	}
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException
+	{
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException
+	{
+		val state = (State)request.getAttribute(stateAttribute);
+		request.removeAttribute(stateAttribute);
+		if (request.getDispatcherType() == DispatcherType.ASYNC && state == null)
+			chain.doFilter(request,response);
+		else if (state == State.ADMITTED || (state == null && permits.tryAcquire()))
+			process(request,response,chain);
+		else if (state == State.TIMED_OUT || !enqueue(request,response))
+			reject((HttpServletResponse)response);
+	}
+
+	private void process(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException
+	{
+		accepted.increment();
+		try
+		{
+			chain.doFilter(request,response);
+		}
+		finally
+		{
+			release();
+		}
+	}
+
+	private boolean enqueue(ServletRequest request, ServletResponse response)
+	{
+		if (queued.incrementAndGet() > maxQueued)
+		{
+			queued.decrementAndGet();
+			return false;
+		}
+		request.setAttribute(stateAttribute,State.QUEUED);
+		val asyncContext = request.startAsync(request,response);
+		asyncContext.setTimeout(queueTimeout);
+		asyncContext.addListener(new QueueListener());
+		queue.add(asyncContext);
+		if (permits.tryAcquire())
+			release();
+		return true;
+	}
+
+	private void release()
+	{
+		while (true)
+		{
+			val next = queue.poll();
+			if (next == null)
+			{
+				permits.release();
+				return;
+			}
+			queued.decrementAndGet();
+			try
+			{
+				next.getRequest().setAttribute(stateAttribute,State.ADMITTED);
+				next.dispatch();
+				return;
+			}
+			catch (IllegalStateException e)
+			{
+				// the request completed while it was queued, hand the permit to the next one
+			}
+		}
+	}
+
+	private void reject(HttpServletResponse response)
+	{
+		rejected.increment();
+		response.setHeader(HttpHeader.RETRY_AFTER.asString(),String.valueOf(retryAfter));
+		response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+	}
+
+	private class QueueListener implements AsyncListener
+	{
+		@Override
+		public void onTimeout(AsyncEvent event) throws IOException
+		{
+			if (dequeue(event.getAsyncContext()))
+			{
+				event.getAsyncContext().getRequest().setAttribute(stateAttribute,State.TIMED_OUT);
+				event.getAsyncContext().dispatch();
+			}
+		}
+
+		@Override
+		public void onError(AsyncEvent event) throws IOException
+		{
+			if (dequeue(event.getAsyncContext()))
+				event.getAsyncContext().complete();
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) throws IOException
+		{
+			dequeue(event.getAsyncContext());
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) throws IOException
+		{
+		}
+
+		private boolean dequeue(AsyncContext asyncContext)
+		{
+			val result = queue.remove(asyncContext);
+			if (result)
+				queued.decrementAndGet();
+			return result;
+		}
+	}
+
+	@Override
+	public void destroy()
+	{
+	}
+
+	@ManagedAttribute("name")
+	public String getName()
+	{
+		return name;
+	}
+
+	@ManagedAttribute("maximum number of concurrent requests")
+	public int getMaxConcurrent()
+	{
+		return maxConcurrent;
+	}
+
+	@ManagedAttribute("number of active requests")
+	public int getActive()
+	{
+		return maxConcurrent - permits.availablePermits();
+	}
+
+	@ManagedAttribute("number of queued requests")
+	public int getQueued()
+	{
+		return queued.get();
+	}
+
+	@ManagedAttribute("number of accepted requests")
+	public long getAccepted()
+	{
+		return accepted.sum();
+	}
+
+	@ManagedAttribute("number of rejected requests")
+	public long getRejected()
+	{
+		return rejected.sum();
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 E.Luinstra
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.luin.file.client.web;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.ext.Provider;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.val;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Adds a strong ETag, computed from the JSON representation, and a Last-Modified header, taken from the statusTime property of the task,
+ * to successful GET and HEAD responses of single resources (/upload/{id}, /download/{id} and /files/{id}/info)
+ * and answers If-None-Match and If-Modified-Since with 304 Not Modified without sending the body.
+ * Listings are not handled: they change with every task, so hashing them costs more than it saves.
+ * The entity is serialized once and the result is sent as is when the representation has changed.
+ */
+@Provider
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@AllArgsConstructor
+public class ConditionalGetFilter implements ContainerResponseFilter
+{
+	private static final String STATUS_TIME = "statusTime";
+	private static final Pattern SINGLE_RESOURCE_PATH = Pattern.compile("/rest/v1/((upload|download)/[^/]+|files/[^/]+/info)/?$");
+	ObjectMapper mapper;
+	Map<Class<?>,Optional<AnnotatedMember>> statusTimeAccessors = new ConcurrentHashMap<>();
+
+	@Override
+	public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException
+	{
+		if (isEligible(requestContext,responseContext))
+		{
+			val entity = responseContext.getEntity();
+			val content = mapper.writerFor(mapper.constructType(responseContext.getEntityType())).writeValueAsBytes(entity);
+			val etag = new EntityTag(DigestUtils.md5Hex(content));
+			val lastModified = getLastModified(entity);
+			responseContext.getHeaders().putSingle(HttpHeaders.ETAG,etag);
+			lastModified.ifPresent(d -> responseContext.getHeaders().putSingle(HttpHeaders.LAST_MODIFIED,d));
+			val notModified = lastModified.isPresent()
+					? requestContext.getRequest().evaluatePreconditions(lastModified.get(),etag)
+					: requestContext.getRequest().evaluatePreconditions(etag);
+			if (notModified != null)
+			{
+				responseContext.setStatus(Status.NOT_MODIFIED.getStatusCode());
+				responseContext.setEntity(null);
+			}
+			else
+				responseContext.setEntity(content,responseContext.getEntityAnnotations(),responseContext.getMediaType());
+		}
+	}
+
+	private boolean isEligible(ContainerRequestContext requestContext, ContainerResponseContext responseContext)
+	{
+		return (HttpMethod.GET.equals(requestContext.getMethod()) || HttpMethod.HEAD.equals(requestContext.getMethod()))
+				&& responseContext.getStatus() == Status.OK.getStatusCode()
+				&& responseContext.hasEntity()
+				&& responseContext.getMediaType() != null
+				&& MediaType.APPLICATION_JSON_TYPE.isCompatible(responseContext.getMediaType())
+				&& SINGLE_RESOURCE_PATH.matcher(requestContext.getUriInfo().getRequestUri().getPath()).find();
+	}
+
+	private Optional<Date> getLastModified(Object entity)
+	{
+		return statusTimeAccessors.computeIfAbsent(entity.getClass(),this::findStatusTimeAccessor)
+				.map(a -> a.getValue(entity))
+				.flatMap(this::toInstant)
+				.map(i -> Date.from(i.truncatedTo(ChronoUnit.SECONDS)));
+	}
+
+	private Optional<AnnotatedMember> findStatusTimeAccessor(Class<?> type)
+	{
+		val result = mapper.getSerializationConfig().introspect(mapper.constructType(type)).findProperties().stream()
+				.filter(p -> STATUS_TIME.equals(p.getName()))
+				.map(BeanPropertyDefinition::getAccessor)
+				.filter(a -> a != null)
+				.findFirst();
+		result.ifPresent(a -> a.fixAccess(true));
+		return result;
+	}
+
+	private Optional<Instant> toInstant(Object time)
+	{
+		if (time instanceof Instant)
+			return Optional.of((Instant)time);
+		if (time instanceof ZonedDateTime)
+			return Optional.of(((ZonedDateTime)time).toInstant());
+		if (time instanceof OffsetDateTime)
+			return Optional.of(((OffsetDateTime)time).toInstant());
+		if (time instanceof LocalDateTime)
+			return Optional.of(((LocalDateTime)time).atZone(ZoneId.systemDefault()).toInstant());
+		if (time instanceof Date)
+			return Optional.of(((Date)time).toInstant());
+		return Optional.empty();
+	}
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright 2020 E.Luinstra
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.luin.file.client.web;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
+import javax.activation.FileDataSource;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Produces;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.InclusiveByteRange;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.util.MultiPartOutputStream;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.val;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Serves file content (a {@link File}, {@link Path} or file backed {@link DataSource} or {@link DataHandler}) with HEAD, Range (single and multiple ranges) and If-Range support.
+ * The status and headers are set by the response filter, so they pass through the CXF out chain as usual.
+ * The writer then commits them through the entity stream and hands the file channel to Jetty's {@link HttpOutput#sendContent(ReadableByteChannel)},
+ * which closes the file when the content is sent. Other content is copied to the entity stream.
+ */
+@Provider
+@Produces({MediaType.APPLICATION_OCTET_STREAM,MediaType.WILDCARD})
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class FileContentProvider implements ContainerResponseFilter, MessageBodyWriter<Object>
+{
+	@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+	@AllArgsConstructor
+	private static class FileRanges
+	{
+		Path file;
+		List<InclusiveByteRange> ranges;
+		long length;
+		MediaType mediaType;
+		String boundary;
+	}
+
+	@FieldDefaults(level = AccessLevel.PRIVATE)
+	@AllArgsConstructor
+	private static class RangeChannel implements ReadableByteChannel
+	{
+		final FileChannel channel;
+		long remaining;
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException
+		{
+			if (remaining <= 0)
+				return -1;
+			int result;
+			if (dst.remaining() <= remaining)
+				result = channel.read(dst);
+			else
+			{
+				// call limit and position through Buffer: the ByteBuffer overrides do not exist on Java 8
+				val slice = dst.slice();
+				((Buffer)slice).limit((int)remaining);
+				result = channel.read(slice);
+				if (result > 0)
+					((Buffer)dst).position(dst.position() + result);
+			}
+			remaining -= Math.max(0,result);
+			return result;
+		}
+
+		@Override
+		public boolean isOpen()
+		{
+			return channel.isOpen();
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			channel.close();
+		}
+	}
+
+	@Context
+	HttpServletRequest request;
+
+	@Override
+	public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException
+	{
+		val file = responseContext.getStatus() == Status.OK.getStatusCode() && isGetOrHead(requestContext) ? getFile(responseContext.getEntity()) : Optional.<Path>empty();
+		if (file.isPresent())
+		{
+			val length = Files.size(file.get());
+			val lastModified = Files.getLastModifiedTime(file.get()).toMillis();
+			val etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+			val headers = responseContext.getHeaders();
+			headers.putSingle(HttpHeader.ACCEPT_RANGES.asString(),"bytes");
+			headers.putSingle(HttpHeaders.ETAG,etag);
+			headers.putSingle(HttpHeaders.LAST_MODIFIED,new Date(lastModified));
+			if (isRangeRequest(requestContext,etag,lastModified))
+				setRanges(file.get(),length,requestContext,responseContext);
+			else
+				headers.putSingle(HttpHeaders.CONTENT_LENGTH,length);
+		}
+	}
+
+	private void setRanges(Path file, long length, ContainerRequestContext requestContext, ContainerResponseContext responseContext)
+	{
+		val headers = responseContext.getHeaders();
+		val ranges = InclusiveByteRange.satisfiableRanges(Collections.enumeration(requestContext.getHeaders().get(HttpHeader.RANGE.asString())),length);
+		if (ranges == null || ranges.isEmpty())
+		{
+			responseContext.setStatus(Status.REQUESTED_RANGE_NOT_SATISFIABLE.getStatusCode());
+			responseContext.setEntity(null);
+			headers.putSingle(HttpHeader.CONTENT_RANGE.asString(),InclusiveByteRange.to416HeaderRangeString(length));
+			headers.putSingle(HttpHeaders.CONTENT_LENGTH,0);
+		}
+		else if (ranges.size() == 1)
+		{
+			val range = ranges.get(0);
+			responseContext.setStatus(Status.PARTIAL_CONTENT.getStatusCode());
+			responseContext.setEntity(new FileRanges(file,ranges,length,responseContext.getMediaType(),null),responseContext.getEntityAnnotations(),responseContext.getMediaType());
+			headers.putSingle(HttpHeader.CONTENT_RANGE.asString(),range.toHeaderRangeString(length));
+			headers.putSingle(HttpHeaders.CONTENT_LENGTH,range.getSize());
+		}
+		else
+		{
+			val boundary = UUID.randomUUID().toString().replace("-","");
+			responseContext.setStatus(Status.PARTIAL_CONTENT.getStatusCode());
+			responseContext.setEntity(new FileRanges(file,ranges,length,responseContext.getMediaType(),boundary),responseContext.getEntityAnnotations(),MediaType.valueOf("multipart/byteranges; boundary=" + boundary));
+			headers.remove(HttpHeaders.CONTENT_LENGTH);
+		}
+	}
+
+	private boolean isGetOrHead(ContainerRequestContext requestContext)
+	{
+		return HttpMethod.GET.equals(requestContext.getMethod()) || HttpMethod.HEAD.equals(requestContext.getMethod());
+	}
+
+	private boolean isRangeRequest(ContainerRequestContext requestContext, String etag, long lastModified)
+	{
+		if (requestContext.getHeaderString(HttpHeader.RANGE.asString()) == null)
+			return false;
+		val ifRange = requestContext.getHeaderString(HttpHeader.IF_RANGE.asString());
+		if (ifRange == null)
+			return true;
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+			return ifRange.equals(etag);
+		try
+		{
+			return request.getDateHeader(HttpHeader.IF_RANGE.asString()) == lastModified / 1000 * 1000;
+		}
+		catch (IllegalArgumentException e)
+		{
+			return false;
+		}
+	}
+
+	@Override
+	public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType)
+	{
+		return FileRanges.class.isAssignableFrom(type) || File.class.isAssignableFrom(type) || Path.class.isAssignableFrom(type) || DataSource.class.isAssignableFrom(type) || DataHandler.class.isAssignableFrom(type);
+	}
+
+	@Override
+	public long getSize(Object entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType)
+	{
+		return -1;
+	}
+
+	@Override
+	public void writeTo(Object entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String,Object> httpHeaders, OutputStream entityStream) throws IOException
+	{
+		if (isHead())
+			return;
+		if (entity instanceof FileRanges)
+			writeRanges((FileRanges)entity,entityStream);
+		else
+		{
+			val file = getFile(entity);
+			if (file.isPresent())
+				send(file.get(),0,Files.size(file.get()),entityStream);
+			else
+				copy(entity,entityStream);
+		}
+	}
+
+	private void writeRanges(FileRanges entity, OutputStream entityStream) throws IOException
+	{
+		if (entity.boundary == null)
+		{
+			val range = entity.ranges.get(0);
+			send(entity.file,range.getFirst(),range.getSize(),entityStream);
+		}
+		else
+		{
+			val multipart = new MultiPartOutputStream(entityStream,entity.boundary);
+			for (val range : entity.ranges)
+			{
+				multipart.startPart(entity.mediaType.toString(),new String[]{HttpHeader.CONTENT_RANGE.asString() + ": " + range.toHeaderRangeString(entity.length)});
+				try (val in = Files.newInputStream(entity.file))
+				{
+					IOUtils.copyLarge(in,multipart,range.getFirst(),range.getSize());
+				}
+			}
+			multipart.close();
+		}
+	}
+
+	private void send(Path file, long position, long size, OutputStream entityStream) throws IOException
+	{
+		if (size <= 0)
+			return;
+		val out = getHttpOutput();
+		try (val channel = FileChannel.open(file,StandardOpenOption.READ))
+		{
+			channel.position(position);
+			if (out.isPresent())
+			{
+				entityStream.write(new byte[0]);
+				entityStream.flush();
+				out.get().sendContent(new RangeChannel(channel,size));
+				addBytesSent(size);
+			}
+			else
+				IOUtils.copyLarge(Channels.newInputStream(channel),entityStream,0,size);
+		}
+	}
+
+	private void addBytesSent(long size)
+	{
+		val message = PhaseInterceptorChain.getCurrentMessage();
+		if (message != null)
+			message.getExchange().put(MessageLoggingFeature.BYTES_SENT,size);
+	}
+
+	private Optional<HttpOutput> getHttpOutput()
+	{
+		return Optional.ofNullable(Request.getBaseRequest(request)).map(r -> r.getResponse().getHttpOutput());
+	}
+
+	private Optional<Path> getFile(Object entity)
+	{
+		if (entity instanceof File)
+			return Optional.of(((File)entity).toPath());
+		if (entity instanceof Path)
+			return Optional.of((Path)entity);
+		if (entity instanceof DataHandler)
+			return getFile(((DataHandler)entity).getDataSource());
+		if (entity instanceof FileDataSource)
+			return Optional.of(((FileDataSource)entity).getFile().toPath());
+		return Optional.empty();
+	}
+
+	private void copy(Object entity, OutputStream out) throws IOException
+	{
+		if (entity instanceof DataHandler)
+			((DataHandler)entity).writeTo(out);
+		else
+			try (val in = getInputStream(entity))
+			{
+				IOUtils.copyLarge(in,out);
+			}
+	}
+
+	private InputStream getInputStream(Object entity) throws IOException
+	{
+		if (entity instanceof DataSource)
+			return ((DataSource)entity).getInputStream();
+		return Files.newInputStream(getFile(entity).get());
+	}
+
+	private boolean isHead()
+	{
+		return HttpMethod.HEAD.equals(request.getMethod());
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2020 E.Luinstra
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.luin.file.client.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.cxf.Bus;
+import org.apache.cxf.ext.logging.WireTapIn;
+import org.apache.cxf.feature.AbstractFeature;
+import org.apache.cxf.interceptor.InterceptorProvider;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.transport.http.AbstractHTTPDestination;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.val;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Samples exchanges for message logging and, when metadata is enabled, logs one line per exchange
+ * (method, path, status, latency, request and response bytes) without buffering any payload.
+ * Request bytes are counted as the body is read, so chunked and HTTP/2 requests without a Content-Length are counted as well.
+ * Exchanges that are not sampled are also skipped by the CXF LoggingFeature: its logging interceptors are disabled
+ * and its wire tap, which would otherwise cache the request payload, is removed from the chain.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@AllArgsConstructor
+public class MessageLoggingFeature extends AbstractFeature
+{
+	public enum Mode
+	{
+		NONE, METADATA, PAYLOAD
+	}
+
+	private static final Logger log = LoggerFactory.getLogger(MessageLoggingFeature.class);
+	private static final String LIVE_LOGGING_PROP = "org.apache.cxf.logging.enable";
+	private static final String START_TIME = MessageLoggingFeature.class.getName() + ".startTime";
+	private static final String BYTES_RECEIVED = MessageLoggingFeature.class.getName() + ".bytesReceived";
+	/**
+	 * Exchange property with the number of response bytes a provider sent to the servlet output directly, bypassing the message output stream
+	 */
+	public static final String BYTES_SENT = MessageLoggingFeature.class.getName() + ".bytesSent";
+	double sampleRate;
+	boolean metadata;
+
+	@Override
+	protected void initializeProvider(InterceptorProvider provider, Bus bus)
+	{
+		provider.getInInterceptors().add(new SamplingInterceptor());
+		if (metadata)
+		{
+			val metadataInterceptor = new MetadataInterceptor();
+			provider.getOutInterceptors().add(metadataInterceptor);
+			provider.getOutFaultInterceptors().add(metadataInterceptor);
+		}
+	}
+
+	private class SamplingInterceptor extends AbstractPhaseInterceptor<Message>
+	{
+		public SamplingInterceptor()
+		{
+			super(Phase.RECEIVE);
+			addBefore(WireTapIn.class.getName());
+		}
+
+		@Override
+		public void handleMessage(Message message)
+		{
+			if (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate)
+			{
+				message.getExchange().put(START_TIME,System.nanoTime());
+				if (metadata)
+					countBytesReceived(message);
+			}
+			else
+			{
+				message.getExchange().put(LIVE_LOGGING_PROP,"false");
+				removeWireTaps(message);
+			}
+		}
+
+		private void countBytesReceived(Message message)
+		{
+			val is = message.getContent(InputStream.class);
+			if (is != null)
+			{
+				val counter = new CountingInputStream(is);
+				message.setContent(InputStream.class,counter);
+				message.getExchange().put(BYTES_RECEIVED,counter);
+			}
+		}
+
+		private void removeWireTaps(Message message)
+		{
+			val chain = message.getInterceptorChain();
+			if (chain != null)
+				StreamSupport.stream(chain.spliterator(),false)
+						.filter(WireTapIn.class::isInstance)
+						.collect(Collectors.toList())
+						.forEach(chain::remove);
+		}
+	}
+
+	private static class MetadataInterceptor extends AbstractPhaseInterceptor<Message>
+	{
+		public MetadataInterceptor()
+		{
+			super(Phase.PRE_STREAM);
+		}
+
+		@Override
+		public void handleMessage(Message message)
+		{
+			val startTime = (Long)message.getExchange().get(START_TIME);
+			val os = message.getContent(OutputStream.class);
+			if (startTime != null && os != null)
+				message.setContent(OutputStream.class,new LoggingOutputStream(os,message,startTime));
+		}
+	}
+
+	private static class LoggingOutputStream extends CountingOutputStream
+	{
+		private final Message message;
+		private final long startTime;
+		private boolean closed;
+
+		public LoggingOutputStream(OutputStream out, Message message, long startTime)
+		{
+			super(out);
+			this.message = message;
+			this.startTime = startTime;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			super.close();
+			if (!closed)
+			{
+				closed = true;
+				log();
+			}
+		}
+
+		private void log()
+		{
+			val request = (HttpServletRequest)message.getExchange().getInMessage().get(AbstractHTTPDestination.HTTP_REQUEST);
+			val status = message.get(Message.RESPONSE_CODE);
+			val latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+			if (request != null)
+				log.info("{} {} {} {}ms in={} out={}",request.getMethod(),request.getRequestURI(),status == null ? (isFault() ? 500 : 200) : status,latency,getBytesReceived(),getByteCount() + (Long)message.getExchange().getOrDefault(BYTES_SENT,0L));
+		}
+
+		private long getBytesReceived()
+		{
+			val counter = (CountingInputStream)message.getExchange().get(BYTES_RECEIVED);
+			return counter == null ? 0 : counter.getByteCount();
+		}
+
+		private boolean isFault()
+		{
+			return message == message.getExchange().getOutFaultMessage();
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 E.Luinstra
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.luin.file.client.web;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import dev.luin.file.client.web.ClientRateLimitFilter.ClientState;
+import lombok.AccessLevel;
+import lombok.val;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Charges the request body to the bytes in flight of a client as it is read, for requests without a Content-Length.
+ * A read that would exceed the limit fails with an {@link IOException}, which aborts the request.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+class MeteredRequest extends HttpServletRequestWrapper
+{
+	ClientState client;
+	Runnable onRejected;
+	ServletInputStream inputStream;
+	AtomicLong bytesRead = new AtomicLong();
+
+	public MeteredRequest(HttpServletRequest request, ClientState client, Runnable onRejected) throws IOException
+	{
+		super(request);
+		this.client = client;
+		this.onRejected = onRejected;
+		this.inputStream = new MeteredInputStream(request.getInputStream());
+	}
+
+	/**
+	 * @return the number of bytes read, and charged to the client, so far
+	 */
+	public long getBytesRead()
+	{
+		return bytesRead.get();
+	}
+
+	@Override
+	public ServletInputStream getInputStream() throws IOException
+	{
+		return inputStream;
+	}
+
+	@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+	private class MeteredInputStream extends ServletInputStream
+	{
+		ServletInputStream in;
+
+		MeteredInputStream(ServletInputStream in)
+		{
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			val result = in.read();
+			if (result != -1)
+				charge(1);
+			return result;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			val result = in.read(b,off,len);
+			if (result > 0)
+				charge(result);
+			return result;
+		}
+
+		private void charge(long bytes) throws IOException
+		{
+			if (!client.tryAddBytes(bytes,bytesRead.get()))
+			{
+				onRejected.run();
+				throw new IOException("Client exceeded its bytes in flight limit");
+			}
+			bytesRead.addAndGet(bytes);
+		}
+
+		@Override
+		public int available() throws IOException
+		{
+			return in.available();
+		}
+
+		@Override
+		public boolean isFinished()
+		{
+			return in.isFinished();
+		}
+
+		@Override
+		public boolean isReady()
+		{
+			return in.isReady();
+		}
+
+		@Override
+		public void setReadListener(ReadListener readListener)
+		{
+			in.setReadListener(readListener);
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020 E.Luinstra
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.luin.file.client.web;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import lombok.AccessLevel;
+import lombok.val;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Reads the first bytes of the request body up front, so a filter can inspect them, and replays them to the application.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+class PeekingRequest extends HttpServletRequestWrapper
+{
+	byte[] prefix;
+	ServletInputStream inputStream;
+
+	public PeekingRequest(HttpServletRequest request, int maxSize) throws IOException
+	{
+		super(request);
+		val in = request.getInputStream();
+		val buffer = new byte[maxSize];
+		int size = 0;
+		for (int n = 0; size < maxSize && (n = in.read(buffer,size,maxSize - size)) != -1; size += n);
+		this.prefix = Arrays.copyOf(buffer,size);
+		this.inputStream = new PrefixInputStream(in);
+	}
+
+	/**
+	 * @return the first bytes of the request body decoded as ISO-8859-1, so every byte maps to one char
+	 */
+	public String getPrefix()
+	{
+		return new String(prefix,StandardCharsets.ISO_8859_1);
+	}
+
+	@Override
+	public ServletInputStream getInputStream() throws IOException
+	{
+		return inputStream;
+	}
+
+	@FieldDefaults(level = AccessLevel.PRIVATE)
+	private class PrefixInputStream extends ServletInputStream
+	{
+		final ServletInputStream in;
+		int position;
+
+		PrefixInputStream(ServletInputStream in)
+		{
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			return position < prefix.length ? prefix[position++] & 0xff : in.read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			if (position >= prefix.length)
+				return in.read(b,off,len);
+			val n = Math.min(len,prefix.length - position);
+			System.arraycopy(prefix,position,b,off,n);
+			position += n;
+			return n;
+		}
+
+		@Override
+		public int available() throws IOException
+		{
+			return position < prefix.length ? prefix.length - position : in.available();
+		}
+
+		@Override
+		public boolean isFinished()
+		{
+			return position >= prefix.length && in.isFinished();
+		}
+
+		@Override
+		public boolean isReady()
+		{
+			return position < prefix.length || in.isReady();
+		}
+
+		@Override
+		public void setReadListener(ReadListener readListener)
+		{
+			in.setReadListener(readListener);
+		}
+	}
+}
@@ -68,7 +68,9 @@ public class WebAuthentication implements Config, SystemInterface
 		AUTHENTICATION("authentication"),
 		CLIENT_TRUST_STORE_TYPE("clientTrustStoreType"),
 		CLIENT_TRUST_STORE_PATH("clientTrustStorePath"),
-		CLIENT_TRUST_STORE_PASSWORD("clientTrustStorePassword");
+		CLIENT_TRUST_STORE_PASSWORD("clientTrustStorePassword"),
+		CLIENT_CERTIFICATE_CACHE_SIZE("clientCertificateCacheSize"),
+		CLIENT_CERTIFICATE_CACHE_TTL("clientCertificateCacheTtl");
 
 		String name;
 	}
@@ -78,7 +80,9 @@ public class WebAuthentication implements Config, SystemInterface
 	@Getter
 	private enum DefaultValue
 	{
-		KEYSTORE_TYPE(KeyStoreType.PKCS12.name());
+		KEYSTORE_TYPE(KeyStoreType.PKCS12.name()),
+		CLIENT_CERTIFICATE_CACHE_SIZE("1000"),
+		CLIENT_CERTIFICATE_CACHE_TTL("300");
 
 		String value;
 	}
@@ -96,6 +100,8 @@ public class WebAuthentication implements Config, SystemInterface
 		options.addOption(Option.CLIENT_TRUST_STORE_TYPE.name,true,"set client truststore type [default: " + DefaultValue.KEYSTORE_TYPE.value + "]");
 		options.addOption(Option.CLIENT_TRUST_STORE_PATH.name,true,"set client truststore path [default: " + NONE + "]");
 		options.addOption(Option.CLIENT_TRUST_STORE_PASSWORD.name,true,"set client truststore password [default: " + NONE + "]");
+		options.addOption(Option.CLIENT_CERTIFICATE_CACHE_SIZE.name,true,"set max number of cached client certificate validations, 0 disables the cache [default: " + DefaultValue.CLIENT_CERTIFICATE_CACHE_SIZE.value + "]");
+		options.addOption(Option.CLIENT_CERTIFICATE_CACHE_TTL.name,true,"set client certificate validation cache TTL in seconds [default: " + DefaultValue.CLIENT_CERTIFICATE_CACHE_TTL.value + "]");
 		return options;
 	}
 	
@@ -119,16 +125,38 @@ public class WebAuthentication implements Config, SystemInterface
 			}
 			else if (webServer.isSSLEnabled() && webServer.isClientAuthenticationEnabled())
 			{
-				result.addFilter(createClientCertificateManagerFilterHolder(cmd),"/*",EnumSet.of(DispatcherType.REQUEST,DispatcherType.ERROR));
-				result.addFilter(createClientCertificateAuthenticationFilterHolder(cmd),"/*",EnumSet.of(DispatcherType.REQUEST,DispatcherType.ERROR));
+				val clientCertificateManagerFilterHolder = createClientCertificateManagerFilterHolder(cmd);
+				clientCertificateManagerFilterHolder.setAsyncSupported(true);
+				result.addFilter(clientCertificateManagerFilterHolder,"/*",EnumSet.of(DispatcherType.REQUEST,DispatcherType.ASYNC,DispatcherType.ERROR));
+				val authenticationFilterHolder = createClientCertificateAuthenticationFilterHolder(cmd);
+				authenticationFilterHolder.setAsyncSupported(true);
+				result.addFilter(authenticationFilterHolder,"/*",EnumSet.of(DispatcherType.REQUEST,DispatcherType.ASYNC,DispatcherType.ERROR));
+				result.addBean(authenticationFilterHolder.getFilter());
+				val clientRateLimits = new ClientRateLimits(cmd,webServer);
+				if (clientRateLimits.isEnabled())
+				{
+					val filter = clientRateLimits.createFilter(cmd.getOptionValue(Option.CLIENT_CERTIFICATE_HEADER.name));
+					result.addBean(filter);
+					val holder = new FilterHolder(filter);
+					holder.setAsyncSupported(true);
+					result.addFilter(holder,"/*",EnumSet.of(DispatcherType.REQUEST));
+				}
 			}
 		}
-		result.addServlet(CXFServlet.class,webServer.getSoapPath() + "/*");
+		if (!isClientCertificateAuthenticationEnabled() && new ClientRateLimits(cmd,webServer).isEnabled())
+			println("Client rate limit options are ignored: they require -" + Option.AUTHENTICATION.name + " -ssl -clientAuthentication");
+		new AdmissionControl(cmd,webServer).init(result);
+		result.addServlet(CXFServlet.class,webServer.getSoapPath() + "/*").setAsyncSupported(true);
 		result.setErrorHandler(createErrorHandler());
 		result.addEventListener(contextLoaderListener);
 		return result;
 	}
 
+	private boolean isClientCertificateAuthenticationEnabled()
+	{
+		return cmd.hasOption(Option.AUTHENTICATION.name) && webServer.isSSLEnabled() && webServer.isClientAuthenticationEnabled();
+	}
+
 	protected void createRealmFile(File file) throws IOException, NoSuchAlgorithmException
 	{
 		val username = textIO.newStringInputReader()
@@ -207,7 +235,6 @@ public class WebAuthentication implements Config, SystemInterface
 	protected FilterHolder createClientCertificateAuthenticationFilterHolder(CommandLine cmd) throws IOException
 	{
 		println("Configuring Web Server client certificate authentication:");
-		val result = new FilterHolder(ClientCertificateAuthenticationFilter.class); 
 		val clientTrustStoreType = cmd.getOptionValue(Option.CLIENT_TRUST_STORE_TYPE.name,DefaultValue.KEYSTORE_TYPE.value);
 		val clientTrustStorePath = cmd.getOptionValue(Option.CLIENT_TRUST_STORE_PATH.name);
 		val clientTrustStorePassword = cmd.getOptionValue(Option.CLIENT_TRUST_STORE_PASSWORD.name);
@@ -215,6 +242,7 @@ public class WebAuthentication implements Config, SystemInterface
 		println("Using clientTrustStore " + trustStore.getURI());
 		if (trustStore.exists())
 		{
+			val result = createClientCertificateAuthenticationFilterHolder(cmd,trustStore.getFile());
 			result.setInitParameter("trustStoreType",clientTrustStoreType);
 			result.setInitParameter("trustStorePath",clientTrustStorePath);
 			result.setInitParameter("trustStorePassword",clientTrustStorePassword);
@@ -227,4 +255,22 @@ public class WebAuthentication implements Config, SystemInterface
 			return null;
 		}
 	}
+
+	private FilterHolder createClientCertificateAuthenticationFilterHolder(CommandLine cmd, File trustStoreFile)
+	{
+		val cacheSize = Integer.parseInt(cmd.getOptionValue(Option.CLIENT_CERTIFICATE_CACHE_SIZE.name,DefaultValue.CLIENT_CERTIFICATE_CACHE_SIZE.value));
+		if (cacheSize > 0)
+		{
+			val cacheTtl = Long.parseLong(cmd.getOptionValue(Option.CLIENT_CERTIFICATE_CACHE_TTL.name,DefaultValue.CLIENT_CERTIFICATE_CACHE_TTL.value));
+			println("Caching client certificate validations: size " + cacheSize + ", ttl " + cacheTtl + "s");
+			return new FilterHolder(new CachingClientCertificateAuthenticationFilter(
+					new ClientCertificateAuthenticationFilter(),
+					cmd.getOptionValue(Option.CLIENT_CERTIFICATE_HEADER.name),
+					trustStoreFile,
+					cacheSize,
+					cacheTtl));
+		}
+		else
+			return new FilterHolder(ClientCertificateAuthenticationFilter.class);
+	}
 }
@@ -15,9 +15,16 @@
  */
 package dev.luin.file.client.web;
 
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.Response;
 import javax.xml.namespace.QName;
 import javax.xml.ws.Endpoint;
 import javax.xml.ws.soap.SOAPBinding;
@@ -31,16 +38,19 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
 
 import org.apache.cxf.Bus;
+import org.apache.cxf.attachment.AttachmentDeserializer;
 import org.apache.cxf.binding.BindingFactoryManager;
 import org.apache.cxf.bus.spring.SpringBus;
 import org.apache.cxf.endpoint.Server;
 import org.apache.cxf.ext.logging.LoggingFeature;
+import org.apache.cxf.feature.Feature;
 import org.apache.cxf.jaxrs.JAXRSBindingFactory;
 import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
 import org.apache.cxf.jaxrs.lifecycle.SingletonResourceProvider;
 import org.apache.cxf.jaxrs.openapi.OpenApiFeature;
 import org.apache.cxf.jaxws.EndpointImpl;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -64,6 +74,26 @@ public class WebConfig
 	DownloadService downloadService;
 	@Autowired
 	FileService fileService;
+	@Value("${logging.mode}")
+	MessageLoggingFeature.Mode loggingMode;
+	@Value("${logging.limit}")
+	int loggingLimit;
+	@Value("${logging.logBinary}")
+	boolean loggingLogBinary;
+	@Value("${logging.logMultipart}")
+	boolean loggingLogMultipart;
+	@Value("${logging.sampleRate}")
+	double loggingSampleRate;
+	@Value("${logging.exclude}")
+	String[] loggingExclude;
+	@Value("${file.baseDir}")
+	String fileBaseDir;
+	@Value("${attachment.memoryThreshold}")
+	long attachmentMemoryThreshold;
+	@Value("${attachment.directory}")
+	String attachmentDirectory;
+	@Value("${attachment.maxSize}")
+	long attachmentMaxSize;
 
 	@Bean
 	public Endpoint uploadServiceEndpoint()
@@ -93,14 +123,46 @@ public class WebConfig
 	public SpringBus springBus()
 	{
 		val result = new SpringBus();
-		result.setFeatures(Collections.singletonList(createLoggingFeature()));
+		initAttachmentProperties(result);
+		return result;
+	}
+
+	private void initAttachmentProperties(Bus bus)
+	{
+		bus.setProperty(AttachmentDeserializer.ATTACHMENT_MEMORY_THRESHOLD,attachmentMemoryThreshold);
+		if (attachmentMaxSize > 0)
+			bus.setProperty(AttachmentDeserializer.ATTACHMENT_MAX_SIZE,attachmentMaxSize);
+		val directory = getAttachmentDirectory();
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IllegalStateException("Cannot create attachment directory " + directory.getAbsolutePath());
+		bus.setProperty(AttachmentDeserializer.ATTACHMENT_DIRECTORY,directory);
+	}
+
+	private File getAttachmentDirectory()
+	{
+		if (!attachmentDirectory.trim().isEmpty())
+			return new File(attachmentDirectory.trim());
+		val baseDir = Paths.get(fileBaseDir).toAbsolutePath().normalize();
+		return baseDir.resolveSibling(baseDir.getFileName() + ".attachments").toFile();
+	}
+
+	protected List<Feature> createLoggingFeatures(String address)
+	{
+		if (loggingMode == MessageLoggingFeature.Mode.NONE || Arrays.stream(loggingExclude).map(String::trim).anyMatch(address::equals))
+			return Collections.emptyList();
+		val result = new ArrayList<Feature>();
+		result.add(new MessageLoggingFeature(loggingSampleRate,loggingMode == MessageLoggingFeature.Mode.METADATA));
+		if (loggingMode == MessageLoggingFeature.Mode.PAYLOAD)
+			result.add(createLoggingFeature());
 		return result;
 	}
 
 	private LoggingFeature createLoggingFeature()
 	{
 		val result = new LoggingFeature();
-		result.setPrettyLogging(true);
+		result.setLimit(loggingLimit);
+		result.setLogBinary(loggingLogBinary);
+		result.setLogMultipart(loggingLogMultipart);
 		return result;
 	}
 
@@ -108,6 +170,7 @@ public class WebConfig
 	{
 		val result = new EndpointImpl(springBus(),service);
 		result.setAddress(address);
+		result.setFeatures(createLoggingFeatures(address));
 		result.setServiceName(new QName(namespaceUri,serviceName));
 		result.setEndpointName(new QName(namespaceUri,endpointName));
 		result.publish();
@@ -129,29 +192,44 @@ public class WebConfig
 	@Bean
 	public Server createFileJAXRSServer()
 	{
-		return createJAXRSServer(FileServiceImpl.class,fileService,"/files");
+		return createJAXRSServer(FileServiceImpl.class,fileService,"/files",new FileContentProvider());
 	}
 
-	protected Server createJAXRSServer(Class<?> resourceClass, Object resourceObject, String path)
+	protected Server createJAXRSServer(Class<?> resourceClass, Object resourceObject, String path, Object...providers)
 	{
 		val sf = new JAXRSServerFactoryBean();
 		sf.setBus(springBus());
 		sf.setAddress("/rest/v1" + path);
-		sf.setProvider(createJacksonJsonProvider());
-		sf.setFeatures(Arrays.asList(createOpenApiFeature()));
+		val allProviders = new ArrayList<Object>(Arrays.asList(providers));
+		allProviders.add(jacksonJsonProvider());
+		allProviders.add(conditionalGetFilter());
+		sf.setProviders(allProviders);
+		val features = new ArrayList<Feature>(createLoggingFeatures(sf.getAddress()));
+		features.add(createOpenApiFeature());
+		sf.setFeatures(features);
 		createResource(sf,resourceClass,resourceObject);
 		registerBindingFactory(sf.getBus());
-		return sf.create();
+		val result = sf.create();
+		warmUp(objectMapper(),resourceClass);
+		return result;
 	}
 
-	protected JacksonJsonProvider createJacksonJsonProvider()
+	@Bean
+	public JacksonJsonProvider jacksonJsonProvider()
 	{
 		val result = new JacksonJsonProvider();
-		result.setMapper(createObjectMapper());
+		result.setMapper(objectMapper());
 		return result;
 	}
 
-	protected ObjectMapper createObjectMapper()
+	@Bean
+	public ConditionalGetFilter conditionalGetFilter()
+	{
+		return new ConditionalGetFilter(objectMapper());
+	}
+
+	@Bean
+	public ObjectMapper objectMapper()
 	{
 		val result = new ObjectMapper();
 		result.registerModule(new JavaTimeModule());
@@ -162,6 +240,15 @@ public class WebConfig
 		return result;
 	}
 
+	protected void warmUp(ObjectMapper mapper, Class<?> resourceClass)
+	{
+		Arrays.stream(resourceClass.getMethods())
+				.filter(m -> Arrays.stream(m.getAnnotations()).anyMatch(a -> a.annotationType().isAnnotationPresent(HttpMethod.class)))
+				.map(Method::getGenericReturnType)
+				.filter(t -> t != void.class && t != Response.class)
+				.forEach(t -> mapper.writerFor(mapper.constructType(t)));
+	}
+
 	protected OpenApiFeature createOpenApiFeature()
 	{
 		val result = new OpenApiFeature();
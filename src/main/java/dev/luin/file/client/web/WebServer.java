@@ -16,16 +16,29 @@
 package dev.luin.file.client.web;
 
 import java.io.IOException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Options;
 import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.AbstractHTTP2ServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
+import org.eclipse.jetty.server.ConnectionFactory;
 import org.eclipse.jetty.server.ConnectionLimit;
 import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.SecureRequestCustomizer;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.util.BlockingArrayQueue;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
 
 import dev.luin.file.client.Config;
 import dev.luin.file.client.SystemInterface;
@@ -58,7 +71,18 @@ public class WebServer implements Config, SystemInterface
 		TRUST_STORE_TYPE("trustStoreType"),
 		TRUST_STORE_PATH("trustStorePath"),
 		TRUST_STORE_PASSWORD("trustStorePassword"),
-		CONNECTION_LIMIT("connectionLimit");
+		CONNECTION_LIMIT("connectionLimit"),
+		HTTP2("http2"),
+		HTTP2_MAX_CONCURRENT_STREAMS("http2MaxConcurrentStreams"),
+		HTTP2_INITIAL_SESSION_RECV_WINDOW("http2InitialSessionRecvWindow"),
+		HTTP2_INITIAL_STREAM_RECV_WINDOW("http2InitialStreamRecvWindow"),
+		MIN_THREADS("minThreads"),
+		MAX_THREADS("maxThreads"),
+		THREAD_QUEUE_CAPACITY("threadQueueCapacity"),
+		RESERVED_THREADS("reservedThreads"),
+		ACCEPTORS("acceptors"),
+		SELECTORS("selectors"),
+		VIRTUAL_THREADS("virtualThreads");
 
 		String name;
 	}
@@ -74,12 +98,21 @@ public class WebServer implements Config, SystemInterface
 		PATH("/"),
 		KEYSTORE_TYPE(KeyStoreType.PKCS12.name()),
 		KEYSTORE_FILE("dev/luin/file/server/core/keystore.p12"),
-		KEYSTORE_PASSWORD("password");
+		KEYSTORE_PASSWORD("password"),
+		HTTP2_MAX_CONCURRENT_STREAMS("128"),
+		HTTP2_INITIAL_SESSION_RECV_WINDOW("1048576"),
+		HTTP2_INITIAL_STREAM_RECV_WINDOW("524288"),
+		MIN_THREADS("8"),
+		MAX_THREADS("200"),
+		RESERVED_THREADS("-1"),
+		ACCEPTORS("-1"),
+		SELECTORS("-1");
 
 		String value;
 	}
 
 	private static final String WEB_CONNECTOR_NAME = "web";
+	private static final String VIRTUAL_THREAD_POOL_CLASS = "dev.luin.file.client.web.VirtualThreadPool";
 	private static final String SOAP_PATH = "/service";
 	CommandLine cmd;
 
@@ -99,9 +132,63 @@ public class WebServer implements Config, SystemInterface
 		options.addOption(Option.TRUST_STORE_PATH.name,true,"set truststore path [default: " + NONE + "]");
 		options.addOption(Option.TRUST_STORE_PASSWORD.name,true,"set truststore password [default: " + NONE + "]");
 		options.addOption(Option.CONNECTION_LIMIT.name,true,"set connection limit [default: " + NONE + "]");
+		options.addOption(Option.HTTP2.name,false,"enable HTTP/2 (h2 over ALPN when SSL is enabled, h2c otherwise)");
+		options.addOption(Option.HTTP2_MAX_CONCURRENT_STREAMS.name,true,"set HTTP/2 max concurrent streams per connection [default: " + DefaultValue.HTTP2_MAX_CONCURRENT_STREAMS.value + "]");
+		options.addOption(Option.HTTP2_INITIAL_SESSION_RECV_WINDOW.name,true,"set HTTP/2 initial session receive window in bytes [default: " + DefaultValue.HTTP2_INITIAL_SESSION_RECV_WINDOW.value + "]");
+		options.addOption(Option.HTTP2_INITIAL_STREAM_RECV_WINDOW.name,true,"set HTTP/2 initial stream receive window in bytes [default: " + DefaultValue.HTTP2_INITIAL_STREAM_RECV_WINDOW.value + "]");
+		options.addOption(Option.MIN_THREADS.name,true,"set minimum number of request threads [default: " + DefaultValue.MIN_THREADS.value + "]");
+		options.addOption(Option.MAX_THREADS.name,true,"set maximum number of request threads [default: " + DefaultValue.MAX_THREADS.value + "]");
+		options.addOption(Option.THREAD_QUEUE_CAPACITY.name,true,"set request queue capacity [default: " + NONE + "]");
+		options.addOption(Option.RESERVED_THREADS.name,true,"set number of reserved threads [default: " + DefaultValue.RESERVED_THREADS.value + " (heuristic)]");
+		options.addOption(Option.ACCEPTORS.name,true,"set number of acceptor threads [default: " + DefaultValue.ACCEPTORS.value + " (heuristic)]");
+		options.addOption(Option.SELECTORS.name,true,"set number of selector threads [default: " + DefaultValue.SELECTORS.value + " (heuristic)]");
+		options.addOption(Option.VIRTUAL_THREADS.name,false,"handle requests on virtual threads, cannot be combined with the thread pool options (requires a build with -Pvirtual-threads on JDK 21 or newer)");
 		return options;
 	}
 
+	public ThreadPool createThreadPool()
+	{
+		return cmd.hasOption(Option.VIRTUAL_THREADS.name) ? createVirtualThreadPool() : createQueuedThreadPool();
+	}
+
+	private ThreadPool createQueuedThreadPool()
+	{
+		val minThreads = Integer.parseInt(cmd.getOptionValue(Option.MIN_THREADS.name,DefaultValue.MIN_THREADS.value));
+		val maxThreads = Integer.parseInt(cmd.getOptionValue(Option.MAX_THREADS.name,DefaultValue.MAX_THREADS.value));
+		val queue = cmd.hasOption(Option.THREAD_QUEUE_CAPACITY.name)
+				? new BlockingArrayQueue<Runnable>(Integer.parseInt(cmd.getOptionValue(Option.THREAD_QUEUE_CAPACITY.name)))
+				: null;
+		val result = new QueuedThreadPool(maxThreads,minThreads,60000,queue);
+		result.setReservedThreads(Integer.parseInt(cmd.getOptionValue(Option.RESERVED_THREADS.name,DefaultValue.RESERVED_THREADS.value)));
+		result.setName(WEB_CONNECTOR_NAME);
+		return result;
+	}
+
+	private ThreadPool createVirtualThreadPool()
+	{
+		val poolOptions = Stream.of(Option.MIN_THREADS,Option.MAX_THREADS,Option.THREAD_QUEUE_CAPACITY,Option.RESERVED_THREADS)
+				.map(o -> o.name)
+				.filter(cmd::hasOption)
+				.collect(Collectors.toList());
+		if (!poolOptions.isEmpty())
+		{
+			println("Option(s) " + poolOptions + " cannot be combined with " + Option.VIRTUAL_THREADS.name);
+			exit(1);
+		}
+		try
+		{
+			val result = (ThreadPool)Class.forName(VIRTUAL_THREAD_POOL_CLASS).getDeclaredConstructor().newInstance();
+			println("Using virtual threads");
+			return result;
+		}
+		catch (ReflectiveOperationException | LinkageError e)
+		{
+			println("Virtual threads not available: build with -Pvirtual-threads and run with JDK 21 or newer");
+			exit(1);
+			return null;
+		}
+	}
+
 	public void init(Server server) throws IOException
 	{
 		val connector = isSSLEnabled()
@@ -113,14 +200,37 @@ public class WebServer implements Config, SystemInterface
 
 	private ServerConnector createHttpsConnector(CommandLine cmd, Server server, SslContextFactory factory)
 	{
-		val connector = new ServerConnector(server,factory);
+		val connector = isHttp2Enabled()
+				? new ServerConnector(server,getAcceptors(),getSelectors(),createHttp2ConnectionFactories(factory))
+				: new ServerConnector(server,getAcceptors(),getSelectors(),factory);
 		connector.setHost(cmd.getOptionValue(Option.HOST.name) == null ? DefaultValue.HOST.value : cmd.getOptionValue(Option.HOST.name));
 		connector.setPort(Integer.parseInt(cmd.getOptionValue(Option.PORT.name) == null ? DefaultValue.SSL_PORT.value : cmd.getOptionValue(Option.PORT.name)));
 		connector.setName(WEB_CONNECTOR_NAME);
-		println("SOAP Service configured on https://" + getHost(connector.getHost()) + ":" + connector.getPort() + SOAP_PATH);
+		println("SOAP Service configured on https://" + getHost(connector.getHost()) + ":" + connector.getPort() + SOAP_PATH + (isHttp2Enabled() ? " (h2, http/1.1)" : ""));
 		return connector;
 	}
 
+	private ConnectionFactory[] createHttp2ConnectionFactories(SslContextFactory factory)
+	{
+		val httpConfig = new HttpConfiguration();
+		httpConfig.setSendServerVersion(false);
+		httpConfig.addCustomizer(new SecureRequestCustomizer());
+		val http = new HttpConnectionFactory(httpConfig);
+		val http2 = configureHttp2(new HTTP2ServerConnectionFactory(httpConfig));
+		val alpn = new ALPNServerConnectionFactory();
+		alpn.setDefaultProtocol(http.getProtocol());
+		val ssl = new SslConnectionFactory(factory,alpn.getProtocol());
+		return new ConnectionFactory[]{ssl,alpn,http2,http};
+	}
+
+	private <T extends AbstractHTTP2ServerConnectionFactory> T configureHttp2(T factory)
+	{
+		factory.setMaxConcurrentStreams(Integer.parseInt(cmd.getOptionValue(Option.HTTP2_MAX_CONCURRENT_STREAMS.name,DefaultValue.HTTP2_MAX_CONCURRENT_STREAMS.value)));
+		factory.setInitialSessionRecvWindow(Integer.parseInt(cmd.getOptionValue(Option.HTTP2_INITIAL_SESSION_RECV_WINDOW.name,DefaultValue.HTTP2_INITIAL_SESSION_RECV_WINDOW.value)));
+		factory.setInitialStreamRecvWindow(Integer.parseInt(cmd.getOptionValue(Option.HTTP2_INITIAL_STREAM_RECV_WINDOW.name,DefaultValue.HTTP2_INITIAL_STREAM_RECV_WINDOW.value)));
+		return factory;
+	}
+
 	String getPath(CommandLine cmd)
 	{
 		return cmd.getOptionValue(Option.PATH.name) == null ? DefaultValue.PATH.value : cmd.getOptionValue(Option.PATH.name);
@@ -133,6 +243,11 @@ public class WebServer implements Config, SystemInterface
 		if (cmd.hasOption(Option.CLIENT_AUTHENTICATION.name))
 			addTrustStore(result);
 		result.setExcludeCipherSuites();
+		if (isHttp2Enabled())
+		{
+			result.setCipherComparator(HTTP2Cipher.COMPARATOR);
+			result.setUseCipherSuitesOrder(true);
+		}
 		return result;
 	}
 
@@ -187,14 +302,26 @@ public class WebServer implements Config, SystemInterface
 	{
 		val httpConfig = new HttpConfiguration();
 		httpConfig.setSendServerVersion(false);
-		val result = new ServerConnector(server,new HttpConnectionFactory(httpConfig));
+		val result = isHttp2Enabled()
+				? new ServerConnector(server,getAcceptors(),getSelectors(),new HttpConnectionFactory(httpConfig),configureHttp2(new HTTP2CServerConnectionFactory(httpConfig)))
+				: new ServerConnector(server,getAcceptors(),getSelectors(),new HttpConnectionFactory(httpConfig));
 		result.setHost(cmd.getOptionValue(Option.HOST.name) == null ? DefaultValue.HOST.value : cmd.getOptionValue(Option.HOST.name));
 		result.setPort(Integer.parseInt(cmd.getOptionValue(Option.PORT.name) == null ? DefaultValue.PORT.value : cmd.getOptionValue(Option.PORT.name)));
 		result.setName(WEB_CONNECTOR_NAME);
-		println("SOAP Service configured on http://" + getHost(result.getHost()) + ":" + result.getPort() + SOAP_PATH);
+		println("SOAP Service configured on http://" + getHost(result.getHost()) + ":" + result.getPort() + SOAP_PATH + (isHttp2Enabled() ? " (http/1.1, h2c)" : ""));
 		return result;
 	}
 
+	private int getAcceptors()
+	{
+		return Integer.parseInt(cmd.getOptionValue(Option.ACCEPTORS.name,DefaultValue.ACCEPTORS.value));
+	}
+
+	private int getSelectors()
+	{
+		return Integer.parseInt(cmd.getOptionValue(Option.SELECTORS.name,DefaultValue.SELECTORS.value));
+	}
+
 	private void initConnectionLimit(Server server, final org.eclipse.jetty.server.ServerConnector connector)
 	{
 		if (cmd.hasOption(Option.CONNECTION_LIMIT.name))
@@ -206,6 +333,11 @@ public class WebServer implements Config, SystemInterface
 		return cmd.hasOption(Option.SSL.name);
 	}
 
+	public boolean isHttp2Enabled()
+	{
+		return cmd.hasOption(Option.HTTP2.name);
+	}
+
 	public boolean isClientAuthenticationEnabled()
 	{
 		return cmd.hasOption(Option.CLIENT_AUTHENTICATION.name);
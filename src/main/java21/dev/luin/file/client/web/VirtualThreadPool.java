@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 E.Luinstra
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.luin.file.client.web;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Jetty {@link ThreadPool} that runs every task on a new virtual thread.
+ * Only compiled by the virtual-threads profile; {@link WebServer} loads it by name when -virtualThreads is set.
+ */
+@ManagedObject("virtual thread pool")
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool
+{
+	ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("web-virtual-",0).factory());
+	AtomicInteger threads = new AtomicInteger();
+
+	@Override
+	public void execute(Runnable task)
+	{
+		executor.execute(() ->
+		{
+			threads.incrementAndGet();
+			try
+			{
+				task.run();
+			}
+			finally
+			{
+				threads.decrementAndGet();
+			}
+		});
+	}
+
+	@Override
+	public void join() throws InterruptedException
+	{
+		while (!executor.awaitTermination(1,TimeUnit.DAYS))
+			;
+	}
+
+	@Override
+	@ManagedAttribute("number of running virtual threads")
+	public int getThreads()
+	{
+		return threads.get();
+	}
+
+	@Override
+	public int getIdleThreads()
+	{
+		return 0;
+	}
+
+	@Override
+	public boolean isLowOnThreads()
+	{
+		return false;
+	}
+
+	@Override
+	protected void doStop() throws Exception
+	{
+		executor.shutdown();
+		super.doStop();
+	}
+}
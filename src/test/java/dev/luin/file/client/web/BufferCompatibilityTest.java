@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 E.Luinstra
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.luin.file.client.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import lombok.val;
+
+/**
+ * The build targets Java 8 with -source/-target only. Compiled on JDK 9 or newer, calls like {@code byteBuffer.limit(n)} bind to the
+ * covariant ByteBuffer overrides that do not exist on Java 8 and fail there with NoSuchMethodError.
+ * This test fails when a class of this module references one of those overrides; call them through {@link java.nio.Buffer} instead.
+ */
+public class BufferCompatibilityTest
+{
+	private static final List<String> COVARIANT_METHODS = Arrays.asList("position","limit","mark","reset","clear","flip","rewind");
+
+	@Test
+	void usesOnlyJava8BufferMethods() throws IOException, URISyntaxException
+	{
+		val classes = Paths.get(FileContentProvider.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		val violations = new ArrayList<String>();
+		try (val files = Files.walk(classes))
+		{
+			for (val file : files.filter(f -> f.toString().endsWith(".class")).collect(Collectors.toList()))
+				violations.addAll(findCovariantBufferCalls(file));
+		}
+		assertEquals(new ArrayList<String>(),violations);
+	}
+
+	private List<String> findCovariantBufferCalls(Path file) throws IOException
+	{
+		val result = new ArrayList<String>();
+		try (val in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+		{
+			in.readInt();
+			in.readUnsignedShort();
+			in.readUnsignedShort();
+			val count = in.readUnsignedShort();
+			val utf8 = new HashMap<Integer,String>();
+			val classNames = new HashMap<Integer,Integer>();
+			val refs = new HashMap<Integer,int[]>();
+			val methodRefs = new ArrayList<Integer>();
+			for (int i = 1; i < count; i++)
+			{
+				val tag = in.readUnsignedByte();
+				switch (tag)
+				{
+					case 1:
+						utf8.put(i,in.readUTF());
+						break;
+					case 3: case 4:
+						in.readInt();
+						break;
+					case 5: case 6:
+						in.readLong();
+						i++;
+						break;
+					case 7:
+						classNames.put(i,in.readUnsignedShort());
+						break;
+					case 8: case 16: case 19: case 20:
+						in.readUnsignedShort();
+						break;
+					case 15:
+						in.readUnsignedByte();
+						in.readUnsignedShort();
+						break;
+					case 9: case 10: case 11: case 12: case 17: case 18:
+						refs.put(i,new int[]{in.readUnsignedShort(),in.readUnsignedShort()});
+						if (tag == 10)
+							methodRefs.add(i);
+						break;
+					default:
+						throw new IOException("Unknown constant pool tag " + tag + " in " + file);
+				}
+			}
+			for (val methodRef : methodRefs)
+			{
+				val className = utf8.get(classNames.get(refs.get(methodRef)[0]));
+				val nameAndType = refs.get(refs.get(methodRef)[1]);
+				val name = utf8.get(nameAndType[0]);
+				val descriptor = utf8.get(nameAndType[1]);
+				if (className.startsWith("java/nio/") && className.endsWith("Buffer") && !className.equals("java/nio/Buffer")
+						&& COVARIANT_METHODS.contains(name) && descriptor.endsWith("Buffer;") && !descriptor.endsWith(")Ljava/nio/Buffer;"))
+					result.add(file.getFileName() + ": " + className + "." + name + descriptor);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2020 E.Luinstra
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.luin.file.client.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import dev.luin.file.client.web.ClientRateLimitFilter.ClientState;
+import dev.luin.file.client.web.ClientRateLimitFilter.Limit;
+import lombok.val;
+
+public class ClientRateLimitFilterTest
+{
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	@Test
+	void admitsBurstThenRejects()
+	{
+		val clock = new AtomicLong();
+		val client = new ClientState(new Limit(10,5,0,0),clock::get);
+		for (int i = 0; i < 5; i++)
+			assertEquals(0,client.tryRequest());
+		assertEquals(SECOND / 10,client.tryRequest());
+	}
+
+	@Test
+	void refillsAtTheConfiguredRate()
+	{
+		val clock = new AtomicLong();
+		val client = new ClientState(new Limit(10,5,0,0),clock::get);
+		for (int i = 0; i < 5; i++)
+			client.tryRequest();
+		clock.addAndGet(SECOND / 10 - 1);
+		assertEquals(1,client.tryRequest());
+		clock.addAndGet(1);
+		assertEquals(0,client.tryRequest());
+		assertTrue(client.tryRequest() > 0);
+		clock.addAndGet(SECOND);
+		for (int i = 0; i < 5; i++)
+			assertEquals(0,client.tryRequest());
+		assertTrue(client.tryRequest() > 0);
+	}
+
+	@Test
+	void rejectedRequestsDoNotConsumeCapacity()
+	{
+		val clock = new AtomicLong();
+		val client = new ClientState(new Limit(1,1,0,0),clock::get);
+		assertEquals(0,client.tryRequest());
+		for (int i = 0; i < 10; i++)
+			assertEquals(SECOND,client.tryRequest());
+		clock.addAndGet(SECOND);
+		assertEquals(0,client.tryRequest());
+	}
+
+	@Test
+	void unlimitedRateAdmitsEverything()
+	{
+		val client = new ClientState(Limit.UNLIMITED,() -> 0);
+		for (int i = 0; i < 1000; i++)
+			assertEquals(0,client.tryRequest());
+	}
+
+	@Test
+	void concurrentRequestsAdmitExactlyTheBurst() throws InterruptedException
+	{
+		val client = new ClientState(new Limit(1,50,0,0),() -> 0);
+		val admitted = new AtomicInteger();
+		val threads = 8;
+		val start = new CountDownLatch(1);
+		val done = new CountDownLatch(threads);
+		val executor = Executors.newFixedThreadPool(threads);
+		for (int t = 0; t < threads; t++)
+			executor.execute(() ->
+			{
+				try
+				{
+					start.await();
+					for (int i = 0; i < 100; i++)
+						if (client.tryRequest() == 0)
+							admitted.incrementAndGet();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+				finally
+				{
+					done.countDown();
+				}
+			});
+		start.countDown();
+		assertTrue(done.await(10,TimeUnit.SECONDS));
+		executor.shutdown();
+		assertEquals(50,admitted.get());
+	}
+
+	@Test
+	void limitsConcurrentTransfers()
+	{
+		val client = new ClientState(new Limit(0,1,2,0),() -> 0);
+		assertTrue(client.tryStartTransfer(100));
+		assertTrue(client.tryStartTransfer(100));
+		assertFalse(client.tryStartTransfer(100));
+		client.endTransfer(100);
+		assertTrue(client.tryStartTransfer(100));
+	}
+
+	@Test
+	void limitsBytesInFlight()
+	{
+		val client = new ClientState(new Limit(0,1,0,1000),() -> 0);
+		assertTrue(client.tryStartTransfer(600));
+		assertFalse(client.tryStartTransfer(600));
+		assertTrue(client.tryStartTransfer(400));
+		client.endTransfer(600);
+		assertTrue(client.tryStartTransfer(600));
+	}
+
+	@Test
+	void admitsOneTransferLargerThanTheBytesLimit()
+	{
+		val client = new ClientState(new Limit(0,1,0,1000),() -> 0);
+		assertTrue(client.tryStartTransfer(5000));
+		assertFalse(client.tryStartTransfer(1));
+		client.endTransfer(5000);
+		assertTrue(client.tryStartTransfer(1));
+	}
+
+	@Test
+	void rejectedBytesDoNotHoldATransferSlot()
+	{
+		val client = new ClientState(new Limit(0,1,2,1000),() -> 0);
+		assertTrue(client.tryStartTransfer(1000));
+		assertFalse(client.tryStartTransfer(1));
+		client.endTransfer(1000);
+		assertTrue(client.tryStartTransfer(1));
+		assertTrue(client.tryStartTransfer(1));
+	}
+
+	@Test
+	void chargesStreamedBytesAgainstOtherTransfers()
+	{
+		val client = new ClientState(new Limit(0,1,0,1000),() -> 0);
+		assertTrue(client.tryStartTransfer(0));
+		assertTrue(client.tryAddBytes(600,0));
+		assertTrue(client.tryAddBytes(600,600));
+		client.endTransfer(1200);
+		assertTrue(client.tryStartTransfer(800));
+		assertTrue(client.tryStartTransfer(0));
+		assertTrue(client.tryAddBytes(200,0));
+		assertFalse(client.tryAddBytes(1,200));
+	}
+}
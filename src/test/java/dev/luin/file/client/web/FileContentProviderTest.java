@@ -0,0 +1,224 @@
+/*
+ * Copyright 2020 E.Luinstra
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.luin.file.client.web;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
+import org.apache.cxf.jaxrs.lifecycle.SingletonResourceProvider;
+import org.apache.cxf.transport.servlet.CXFNonSpringServlet;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import lombok.val;
+
+public class FileContentProviderTest
+{
+	private static final int LENGTH = 1000;
+	private static final long LAST_MODIFIED = 1600000000000L;
+	@TempDir
+	static Path directory;
+	static byte[] content;
+	static Server server;
+	static String url;
+
+	@javax.ws.rs.Path("/file")
+	public static class FileResource
+	{
+		File file;
+
+		public FileResource(File file)
+		{
+			this.file = file;
+		}
+
+		@GET
+		@Produces(MediaType.APPLICATION_OCTET_STREAM)
+		public Response get()
+		{
+			return Response.ok(file).build();
+		}
+	}
+
+	@BeforeAll
+	static void startServer() throws Exception
+	{
+		content = new byte[LENGTH];
+		for (int i = 0; i < LENGTH; i++)
+			content[i] = (byte)i;
+		val file = Files.write(directory.resolve("content.bin"),content).toFile();
+		file.setLastModified(LAST_MODIFIED);
+		server = new Server(0);
+		val handler = new ServletContextHandler();
+		val servlet = new CXFNonSpringServlet();
+		handler.addServlet(new ServletHolder(servlet),"/service/*");
+		server.setHandler(handler);
+		server.start();
+		val factory = new JAXRSServerFactoryBean();
+		factory.setBus(servlet.getBus());
+		factory.setAddress("/rest");
+		factory.setResourceClasses(FileResource.class);
+		factory.setResourceProvider(FileResource.class,new SingletonResourceProvider(new FileResource(file)));
+		factory.setProviders(Collections.singletonList(new FileContentProvider()));
+		factory.create();
+		url = "http://localhost:" + ((ServerConnector)server.getConnectors()[0]).getLocalPort() + "/service/rest/file";
+	}
+
+	@AfterAll
+	static void stopServer() throws Exception
+	{
+		server.stop();
+	}
+
+	@Test
+	void servesWholeFile() throws IOException
+	{
+		val connection = get();
+		assertEquals(200,connection.getResponseCode());
+		assertEquals("bytes",connection.getHeaderField(HttpHeader.ACCEPT_RANGES.asString()));
+		assertEquals(LENGTH,connection.getContentLengthLong());
+		assertEquals(LAST_MODIFIED,connection.getLastModified());
+		assertNotNull(connection.getHeaderField(HttpHeader.ETAG.asString()));
+		assertArrayEquals(content,read(connection));
+	}
+
+	@Test
+	void answersHeadWithoutBody() throws IOException
+	{
+		val connection = (HttpURLConnection)new URL(url).openConnection();
+		connection.setRequestMethod("HEAD");
+		assertEquals(200,connection.getResponseCode());
+		assertEquals(LENGTH,connection.getContentLengthLong());
+		assertEquals(0,read(connection).length);
+	}
+
+	@Test
+	void servesSingleRange() throws IOException
+	{
+		val connection = get(HttpHeader.RANGE,"bytes=100-199");
+		assertEquals(206,connection.getResponseCode());
+		assertEquals("bytes 100-199/1000",connection.getHeaderField(HttpHeader.CONTENT_RANGE.asString()));
+		assertEquals(100,connection.getContentLengthLong());
+		assertArrayEquals(Arrays.copyOfRange(content,100,200),read(connection));
+	}
+
+	@Test
+	void servesSuffixRange() throws IOException
+	{
+		val connection = get(HttpHeader.RANGE,"bytes=-10");
+		assertEquals(206,connection.getResponseCode());
+		assertEquals("bytes 990-999/1000",connection.getHeaderField(HttpHeader.CONTENT_RANGE.asString()));
+		assertArrayEquals(Arrays.copyOfRange(content,990,1000),read(connection));
+	}
+
+	@Test
+	void servesMultipleRangesAsMultipart() throws IOException
+	{
+		val connection = get(HttpHeader.RANGE,"bytes=0-9,500-509");
+		assertEquals(206,connection.getResponseCode());
+		val contentType = MediaType.valueOf(connection.getContentType());
+		assertEquals("multipart/byteranges",contentType.getType() + "/" + contentType.getSubtype());
+		assertNotNull(contentType.getParameters().get("boundary"));
+		val body = new String(read(connection),StandardCharsets.ISO_8859_1);
+		assertTrue(body.contains("Content-Range: bytes 0-9/1000"));
+		assertTrue(body.contains("Content-Range: bytes 500-509/1000"));
+		assertTrue(body.contains(new String(Arrays.copyOfRange(content,500,510),StandardCharsets.ISO_8859_1)));
+	}
+
+	@Test
+	void rejectsUnsatisfiableRange() throws IOException
+	{
+		val connection = get(HttpHeader.RANGE,"bytes=1000-1999");
+		assertEquals(416,connection.getResponseCode());
+		assertEquals("bytes */1000",connection.getHeaderField(HttpHeader.CONTENT_RANGE.asString()));
+	}
+
+	@Test
+	void servesRangeWhenIfRangeMatchesETag() throws IOException
+	{
+		val etag = get().getHeaderField(HttpHeader.ETAG.asString());
+		val connection = get(HttpHeader.RANGE,"bytes=0-9",HttpHeader.IF_RANGE,etag);
+		assertEquals(206,connection.getResponseCode());
+		assertArrayEquals(Arrays.copyOfRange(content,0,10),read(connection));
+	}
+
+	@Test
+	void servesWholeFileWhenIfRangeETagDiffers() throws IOException
+	{
+		val connection = get(HttpHeader.RANGE,"bytes=0-9",HttpHeader.IF_RANGE,"\"other\"");
+		assertEquals(200,connection.getResponseCode());
+		assertArrayEquals(content,read(connection));
+	}
+
+	@Test
+	void servesRangeWhenIfRangeMatchesLastModified() throws IOException
+	{
+		val lastModified = get().getHeaderField(HttpHeader.LAST_MODIFIED.asString());
+		val connection = get(HttpHeader.RANGE,"bytes=0-9",HttpHeader.IF_RANGE,lastModified);
+		assertEquals(206,connection.getResponseCode());
+		assertArrayEquals(Arrays.copyOfRange(content,0,10),read(connection));
+	}
+
+	@Test
+	void servesWholeFileWhenIfRangeDateDiffers() throws IOException
+	{
+		val connection = get(HttpHeader.RANGE,"bytes=0-9",HttpHeader.IF_RANGE,"Thu, 01 Jan 2015 00:00:00 GMT");
+		assertEquals(200,connection.getResponseCode());
+		assertArrayEquals(content,read(connection));
+	}
+
+	private static HttpURLConnection get(Object...headers) throws IOException
+	{
+		val connection = (HttpURLConnection)new URL(url).openConnection();
+		for (int i = 0; i < headers.length; i += 2)
+			connection.setRequestProperty(headers[i].toString(),headers[i + 1].toString());
+		return connection;
+	}
+
+	private static byte[] read(HttpURLConnection connection) throws IOException
+	{
+		try (val in = connection.getInputStream())
+		{
+			return IOUtils.toByteArray(in);
+		}
+	}
+}
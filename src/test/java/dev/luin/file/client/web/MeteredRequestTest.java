@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 E.Luinstra
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.luin.file.client.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import dev.luin.file.client.web.ClientRateLimitFilter.ClientState;
+import dev.luin.file.client.web.ClientRateLimitFilter.Limit;
+import lombok.val;
+
+public class MeteredRequestTest
+{
+	@Test
+	void chargesBytesAsTheyAreRead() throws IOException
+	{
+		val client = new ClientState(new Limit(0,1,0,1000),() -> 0);
+		client.tryStartTransfer(0);
+		val request = new MeteredRequest(createRequest(new byte[5000]),client,() -> {});
+		assertEquals(5000,IOUtils.toByteArray(request.getInputStream()).length);
+		assertEquals(5000,request.getBytesRead());
+		assertEquals(-1,request.getInputStream().read());
+		assertEquals(5000,request.getBytesRead());
+	}
+
+	@Test
+	void abortsWhenOtherTransfersHoldTheLimit() throws IOException
+	{
+		val client = new ClientState(new Limit(0,1,0,1000),() -> 0);
+		client.tryStartTransfer(900);
+		client.tryStartTransfer(0);
+		val rejected = new LongAdder();
+		val request = new MeteredRequest(createRequest(new byte[5000]),client,rejected::increment);
+		val buffer = new byte[100];
+		assertEquals(100,request.getInputStream().read(buffer));
+		assertThrows(IOException.class,() -> request.getInputStream().read(buffer));
+		assertEquals(1,rejected.sum());
+		assertEquals(100,request.getBytesRead());
+	}
+
+	private static HttpServletRequest createRequest(byte[] body)
+	{
+		val in = new ByteArrayInputStream(body);
+		val inputStream = new ServletInputStream()
+		{
+			@Override
+			public int read() throws IOException
+			{
+				return in.read();
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException
+			{
+				return in.read(b,off,len);
+			}
+
+			@Override
+			public boolean isFinished()
+			{
+				return in.available() == 0;
+			}
+
+			@Override
+			public boolean isReady()
+			{
+				return true;
+			}
+
+			@Override
+			public void setReadListener(ReadListener readListener)
+			{
+			}
+		};
+		return (HttpServletRequest)Proxy.newProxyInstance(MeteredRequestTest.class.getClassLoader(),new Class<?>[]{HttpServletRequest.class},(proxy,method,args) ->
+		{
+			if ("getInputStream".equals(method.getName()))
+				return inputStream;
+			throw new UnsupportedOperationException(method.getName());
+		});
+	}
+}